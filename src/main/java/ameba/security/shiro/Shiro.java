@@ -1,9 +1,12 @@
 package ameba.security.shiro;
 
+import ameba.security.shiro.authz.CompiledAuthorizations;
+import ameba.security.shiro.authz.RoleRegistry;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.subject.Subject;
 
+
 /**
  * @author icode
  */
@@ -62,6 +65,15 @@ public class Shiro {
     public static boolean hasAnyRoles(String... roleNames) {
         Subject subject = getSubject();
         if (subject != null && roleNames != null && roleNames.length > 0) {
+            long[] roleBits = CompiledAuthorizations.getRoleBits(subject);
+            if (roleBits != null) {
+                for (String role : roleNames) {
+                    if (RoleRegistry.contains(roleBits, role)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
             // Iterate through roles and check to see if the user has one of the
             // roles
             for (String role : roleNames) {
@@ -93,6 +105,15 @@ public class Shiro {
     public static boolean hasAllRoles(String... roleNames) {
         Subject subject = getSubject();
         if (subject != null && roleNames != null && roleNames.length > 0) {
+            long[] roleBits = CompiledAuthorizations.getRoleBits(subject);
+            if (roleBits != null) {
+                for (String role : roleNames) {
+                    if (!RoleRegistry.contains(roleBits, role)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
             // Iterate through roles and check to see if the user has one of the
             // roles
             for (String role : roleNames) {
@@ -116,6 +137,42 @@ public class Shiro {
                 && getSubject().isPermitted(permission);
     }
 
+    /**
+     * 批量验证当前用户是否拥有指定权限，适用于一次渲染大量按钮、菜单的页面
+     *
+     * @param permissions 权限名
+     * @return 与 permissions 一一对应的验证结果
+     */
+    public static boolean[] hasPermissions(String... permissions) {
+        if (permissions == null || permissions.length == 0) {
+            return new boolean[0];
+        }
+        boolean[] result = new boolean[permissions.length];
+        Subject subject = getSubject();
+        if (subject == null) {
+            return result;
+        }
+        int[] indexes = new int[permissions.length];
+        int count = 0;
+        for (int i = 0; i < permissions.length; i++) {
+            if (StringUtils.isNotBlank(permissions[i])) {
+                indexes[count++] = i;
+            }
+        }
+        if (count == 0) {
+            return result;
+        }
+        String[] checks = new String[count];
+        for (int i = 0; i < count; i++) {
+            checks[i] = permissions[indexes[i]];
+        }
+        boolean[] permitted = subject.isPermitted(checks);
+        for (int i = 0; i < count; i++) {
+            result[indexes[i]] = permitted[i];
+        }
+        return result;
+    }
+
     /**
      * 与hasPermission标签逻辑相反，当前用户没有制定权限时，验证通过。
      *
@@ -1,6 +1,7 @@
 package ameba.security.shiro;
 
 import ameba.cache.Cache;
+import ameba.security.shiro.cache.CacheWarmer;
 import ameba.security.shiro.config.IniSecurityManagerFactory;
 import ameba.security.shiro.filters.ShiroContainerFilter;
 import ameba.security.shiro.internal.ShiroBinder;
@@ -9,8 +10,12 @@ import ameba.security.shiro.internal.ShiroExceptionMapper;
 import ameba.util.IOUtils;
 import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.config.Ini;
+import org.apache.shiro.mgt.CachingSecurityManager;
 import org.apache.shiro.mgt.SecurityManager;
+import org.apache.shiro.util.LifecycleUtils;
 import org.glassfish.jersey.internal.inject.InjectionManager;
+import org.glassfish.jersey.server.spi.Container;
+import org.glassfish.jersey.server.spi.ContainerLifecycleListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,10 +66,32 @@ public class ShiroFeature implements Feature {
 
             SecurityUtils.setSecurityManager(securityManager);
 
+            final CacheWarmer cacheWarmer = CacheWarmer.create(securityManager,
+                    context.getConfiguration().getProperties());
+            cacheWarmer.warmUpAsync();
+
             context.register(ShiroDynamicFeature.class)
                     .register(ShiroExceptionMapper.class)
-                    .register(new ShiroBinder(securityManager))
-                    .register(ShiroContainerFilter.class);
+                    .register(new ShiroBinder(securityManager, cacheWarmer))
+                    .register(ShiroContainerFilter.class)
+                    .register(new ContainerLifecycleListener() {
+                        @Override
+                        public void onStartup(Container container) {
+                        }
+
+                        @Override
+                        public void onReload(Container container) {
+                        }
+
+                        @Override
+                        public void onShutdown(Container container) {
+                            cacheWarmer.saveSnapshot();
+                            // 只写回并销毁缓存后端，realm、session manager 等仍由应用自行管理
+                            if (securityManager instanceof CachingSecurityManager) {
+                                LifecycleUtils.destroy(((CachingSecurityManager) securityManager).getCacheManager());
+                            }
+                        }
+                    });
 
             return true;
         }
@@ -0,0 +1,144 @@
+package ameba.security.shiro.authz;
+
+import ameba.security.shiro.authz.permission.URIPermission;
+import ameba.security.shiro.util.URIMatcher;
+import ameba.security.shiro.util.URIMatcherIndex;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.Permission;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 预编译的 AuthorizationInfo
+ * <br>
+ * 权限只解析一次，{@link URIPermission} 编译为 {@link URIMatcherIndex}，
+ * 请求形式的 URIPermission 检查耗时与路径深度相关，与权限数量无关；
+ * 角色编译为 {@link RoleRegistry} 位图。
+ * 编译结果不参与序列化，反序列化后首次使用时重新编译。
+ *
+ * @author icode
+ */
+public class CompiledAuthorizationInfo implements AuthorizationInfo {
+
+    private final AuthorizationInfo info;
+    private transient volatile Compiled compiled;
+
+    public CompiledAuthorizationInfo(AuthorizationInfo info) {
+        this.info = info;
+    }
+
+    public AuthorizationInfo getDelegate() {
+        return info;
+    }
+
+    @Override
+    public Collection<String> getRoles() {
+        return info.getRoles();
+    }
+
+    @Override
+    public Collection<String> getStringPermissions() {
+        return info.getStringPermissions();
+    }
+
+    @Override
+    public Collection<Permission> getObjectPermissions() {
+        return info.getObjectPermissions();
+    }
+
+    public boolean isCompiled() {
+        return compiled != null;
+    }
+
+    /**
+     * 使用已解析的权限编译
+     *
+     * @param permissions 由 realm 解析出的全部权限
+     */
+    public void compile(Collection<Permission> permissions) {
+        compiled = new Compiled(info.getRoles(), permissions);
+    }
+
+    /**
+     * @return 已解析的全部权限，未编译时返回 null
+     */
+    public Collection<Permission> getPermissions() {
+        Compiled c = compiled;
+        return c == null ? null : c.permissions;
+    }
+
+    /**
+     * @return 角色位图，未编译时返回 null
+     */
+    public long[] getRoleBits() {
+        Compiled c = compiled;
+        return c == null ? null : c.roleBits;
+    }
+
+    /**
+     * 是否拥有权限，调用前必须已编译
+     *
+     * @param permission 需要检查的权限
+     * @return 拥有权限：true，否则false
+     */
+    public boolean implies(Permission permission) {
+        Compiled c = compiled;
+        if (c == null) {
+            throw new IllegalStateException("AuthorizationInfo is not compiled");
+        }
+        return c.implies(permission);
+    }
+
+    private static final class Compiled {
+        private final List<Permission> permissions;
+        private final URIMatcherIndex uriIndex;
+        /**
+         * 无法放入索引的权限
+         */
+        private final List<Permission> others;
+        private final long[] roleBits;
+
+        private Compiled(Collection<String> roles, Collection<Permission> permissions) {
+            this.roleBits = RoleRegistry.toBits(roles);
+            this.permissions = ImmutableList.copyOf(permissions);
+            List<URIMatcher> matchers = Lists.newArrayList();
+            List<Permission> others = Lists.newArrayList();
+            for (Permission permission : this.permissions) {
+                if (permission.getClass() == URIPermission.class
+                        && ((URIPermission) permission).getUri() != null) {
+                    matchers.add(((URIPermission) permission).getMatcher());
+                } else {
+                    others.add(permission);
+                }
+            }
+            this.uriIndex = URIMatcherIndex.compile(matchers);
+            this.others = ImmutableList.copyOf(others);
+        }
+
+        private boolean implies(Permission permission) {
+            if (permission instanceof URIPermission) {
+                URIPermission p = (URIPermission) permission;
+                if (p.getRequestPath() != null && p.getMethod() != null) {
+                    if (uriIndex.matches(p.getRequestPath(), p.getRequestQuery(), p.getMethod())) {
+                        return true;
+                    }
+                    for (Permission perm : others) {
+                        if (perm.implies(permission)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            }
+            for (Permission perm : permissions) {
+                if (perm.implies(permission)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package ameba.security.shiro.authz;
+
+import ameba.security.shiro.internal.subject.DefaultWebSubject;
+import ameba.security.shiro.realm.NegativeCachingRealm;
+import ameba.security.shiro.realm.URIAuthorizingRealm;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.Authorizer;
+import org.apache.shiro.authz.ModularRealmAuthorizer;
+import org.apache.shiro.authz.permission.PermissionResolver;
+import org.apache.shiro.mgt.AuthorizingSecurityManager;
+import org.apache.shiro.mgt.SecurityManager;
+import org.apache.shiro.realm.AuthorizingRealm;
+import org.apache.shiro.realm.Realm;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.subject.support.DelegatingSubject;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 直接读取 Subject 在各 realm 中已编译的授权信息
+ * <br>
+ * 仅当 SecurityManager 使用默认的 {@link ModularRealmAuthorizer} 且所有授权 realm 都是
+ * {@link URIAuthorizingRealm} 时可用，否则返回 null，调用方应回退到 Subject 的检查方法。
+ *
+ * @author icode
+ */
+public class CompiledAuthorizations {
+    private static final ConcurrentMap<Class<?>, Boolean> ROLE_CHECK_OVERRIDES = Maps.newConcurrentMap();
+
+    private CompiledAuthorizations() {
+    }
+
+    /**
+     * @return realm 是否覆盖了角色检查方法，覆盖时不能直接使用角色位图
+     */
+    private static boolean overridesRoleCheck(URIAuthorizingRealm realm) {
+        return ROLE_CHECK_OVERRIDES.computeIfAbsent(realm.getClass(), type -> {
+            for (Class<?> c = type; c != null && c != AuthorizingRealm.class; c = c.getSuperclass()) {
+                try {
+                    c.getDeclaredMethod("hasRole", PrincipalCollection.class, String.class);
+                    return true;
+                } catch (NoSuchMethodException e) {
+                    // 继续检查父类
+                }
+                try {
+                    c.getDeclaredMethod("hasRole", String.class, AuthorizationInfo.class);
+                    return true;
+                } catch (NoSuchMethodException e) {
+                    // 继续检查父类
+                }
+            }
+            return false;
+        });
+    }
+
+    private static List<URIAuthorizingRealm> getAuthorizingRealms(Subject subject) {
+        if (!(subject instanceof DelegatingSubject)) {
+            return null;
+        }
+        SecurityManager securityManager = ((DelegatingSubject) subject).getSecurityManager();
+        if (!(securityManager instanceof AuthorizingSecurityManager)) {
+            return null;
+        }
+        Authorizer authorizer = ((AuthorizingSecurityManager) securityManager).getAuthorizer();
+        if (authorizer == null || authorizer.getClass() != ModularRealmAuthorizer.class) {
+            return null;
+        }
+        Collection<Realm> realms = ((ModularRealmAuthorizer) authorizer).getRealms();
+        if (realms == null) {
+            return null;
+        }
+        List<URIAuthorizingRealm> authorizingRealms = Lists.newArrayListWithCapacity(realms.size());
+        for (Realm realm : realms) {
+            if (!(realm instanceof Authorizer)) {
+                continue;
+            }
+            if (realm instanceof NegativeCachingRealm) {
+                realm = ((NegativeCachingRealm) realm).getRealm();
+            }
+            if (!(realm instanceof URIAuthorizingRealm)) {
+                return null;
+            }
+            authorizingRealms.add((URIAuthorizingRealm) realm);
+        }
+        return authorizingRealms;
+    }
+
+    /**
+     * @param subject 当前用户
+     * @return 各 realm 已编译的授权信息，无法直接读取时返回 null
+     */
+    public static List<CompiledAuthorizationInfo> getAuthorizationInfos(Subject subject) {
+        PrincipalCollection principals = subject == null ? null : subject.getPrincipals();
+        if (principals == null || principals.isEmpty()) {
+            return null;
+        }
+        List<URIAuthorizingRealm> realms = getAuthorizingRealms(subject);
+        if (realms == null) {
+            return null;
+        }
+        List<CompiledAuthorizationInfo> infos = Lists.newArrayListWithCapacity(realms.size());
+        for (URIAuthorizingRealm realm : realms) {
+            CompiledAuthorizationInfo info = realm.getCompiledAuthorizationInfo(principals);
+            if (info != null) {
+                infos.add(info);
+            }
+        }
+        return infos;
+    }
+
+    /**
+     * 批量检查权限，每个 realm 只读取一次授权信息
+     *
+     * @param subject     当前用户
+     * @param permissions 权限字符串
+     * @return 与 permissions 一一对应的检查结果，无法直接读取时返回 null
+     */
+    public static boolean[] isPermitted(Subject subject, String... permissions) {
+        PrincipalCollection principals = subject == null ? null : subject.getPrincipals();
+        if (principals == null || principals.isEmpty()) {
+            return null;
+        }
+        List<URIAuthorizingRealm> realms = getAuthorizingRealms(subject);
+        if (realms == null) {
+            return null;
+        }
+        boolean[] result = new boolean[permissions.length];
+        int remaining = permissions.length;
+        for (URIAuthorizingRealm realm : realms) {
+            if (remaining == 0) {
+                break;
+            }
+            CompiledAuthorizationInfo info = realm.getCompiledAuthorizationInfo(principals);
+            if (info == null) {
+                continue;
+            }
+            PermissionResolver resolver = realm.getPermissionResolver();
+            for (int i = 0; i < permissions.length; i++) {
+                if (!result[i] && realm.isPermittedBy(info, resolver.resolvePermission(permissions[i]))) {
+                    result[i] = true;
+                    remaining--;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param subject 当前用户
+     * @return 当前用户在所有 realm 中的角色位图，无法直接读取、realm 覆盖了 hasRole
+     * 或 Subject 开启了请求内缓存时返回 null
+     */
+    public static long[] getRoleBits(Subject subject) {
+        // 开启请求内缓存时由 Subject 检查角色，结果进入请求缓存
+        if (subject instanceof DefaultWebSubject && ((DefaultWebSubject) subject).isAuthorizationCacheEnabled()) {
+            return null;
+        }
+        PrincipalCollection principals = subject == null ? null : subject.getPrincipals();
+        if (principals == null || principals.isEmpty()) {
+            return null;
+        }
+        List<URIAuthorizingRealm> realms = getAuthorizingRealms(subject);
+        if (realms == null) {
+            return null;
+        }
+        long[] bits = new long[0];
+        for (URIAuthorizingRealm realm : realms) {
+            if (overridesRoleCheck(realm)) {
+                return null;
+            }
+        }
+        for (URIAuthorizingRealm realm : realms) {
+            CompiledAuthorizationInfo info = realm.getCompiledAuthorizationInfo(principals);
+            if (info != null) {
+                bits = RoleRegistry.or(bits, info.getRoleBits());
+            }
+        }
+        return bits;
+    }
+}
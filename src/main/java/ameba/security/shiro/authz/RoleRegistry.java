@@ -0,0 +1,132 @@
+package ameba.security.shiro.authz;
+
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 角色名称注册表
+ * <br>
+ * 为角色名称分配连续的整数编号，角色集合以 long[] 位图表示，
+ * 多个角色的 AND / OR 检查只需少量按位运算。
+ *
+ * @author icode
+ */
+public class RoleRegistry {
+    private static final long[] EMPTY = new long[0];
+    private static final ConcurrentMap<String, Integer> IDS = Maps.newConcurrentMap();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private RoleRegistry() {
+    }
+
+    /**
+     * @param role 角色名称
+     * @return 角色编号，未注册时注册
+     */
+    public static int getId(String role) {
+        Integer id = IDS.get(role);
+        if (id == null) {
+            synchronized (IDS) {
+                id = IDS.get(role);
+                if (id == null) {
+                    id = NEXT_ID.getAndIncrement();
+                    IDS.put(role, id);
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * 查找角色编号，不注册新的角色名称
+     *
+     * @param role 角色名称
+     * @return 角色编号，未注册时返回 -1
+     */
+    public static int findId(String role) {
+        Integer id = role == null ? null : IDS.get(role);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * 未注册的角色不可能被任何用户持有，视为不包含
+     *
+     * @param have 角色位图
+     * @param role 角色名称
+     * @return have 是否包含该角色
+     */
+    public static boolean contains(long[] have, String role) {
+        int id = findId(role);
+        if (id < 0) {
+            return false;
+        }
+        int word = id >>> 6;
+        return word < have.length && (have[word] & (1L << id)) != 0;
+    }
+
+    public static int size() {
+        return IDS.size();
+    }
+
+    /**
+     * @param roles 角色名称
+     * @return 角色位图
+     */
+    public static long[] toBits(Collection<String> roles) {
+        if (roles == null || roles.isEmpty()) {
+            return EMPTY;
+        }
+        long[] bits = EMPTY;
+        for (String role : roles) {
+            if (role == null) {
+                continue;
+            }
+            int id = getId(role);
+            int word = id >>> 6;
+            if (word >= bits.length) {
+                bits = Arrays.copyOf(bits, word + 1);
+            }
+            bits[word] |= 1L << id;
+        }
+        return bits;
+    }
+
+    public static long[] or(long[] a, long[] b) {
+        long[] result = Arrays.copyOf(a.length >= b.length ? a : b, Math.max(a.length, b.length));
+        long[] other = a.length >= b.length ? b : a;
+        for (int i = 0; i < other.length; i++) {
+            result[i] |= other[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return have 是否包含 required 中的全部角色
+     */
+    public static boolean containsAll(long[] have, long[] required) {
+        for (int i = 0; i < required.length; i++) {
+            long word = i < have.length ? have[i] : 0L;
+            if ((word & required[i]) != required[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return have 是否包含 required 中的任意一个角色
+     */
+    public static boolean intersects(long[] have, long[] required) {
+        int length = Math.min(have.length, required.length);
+        for (int i = 0; i < length; i++) {
+            if ((have[i] & required[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,115 @@
+package ameba.security.shiro.authz.permission;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.permission.PermissionResolver;
+import org.apache.shiro.authz.permission.WildcardPermissionResolver;
+
+/**
+ * 复用已解析权限的 PermissionResolver
+ * <br>
+ * 相同的权限字符串解析为同一个共享实例，池大小有上限。
+ * <pre>
+ * [main]
+ * permissionResolver = ameba.security.shiro.authz.permission.InterningPermissionResolver
+ * permissionResolver.delegate = $uriPermissionResolver
+ * permissionResolver.maxSize = 10000
+ * securityManager.authorizer.permissionResolver = $permissionResolver
+ * </pre>
+ *
+ * @author icode
+ */
+public class InterningPermissionResolver implements PermissionResolver {
+    public static final long DEFAULT_MAX_SIZE = 10000;
+
+    private PermissionResolver delegate;
+    private long maxSize = DEFAULT_MAX_SIZE;
+    private volatile Cache<String, Permission> pool;
+    /**
+     * 调整大小前旧池的统计
+     */
+    private volatile CacheStats previousStats = new CacheStats(0, 0, 0, 0, 0, 0);
+
+    public InterningPermissionResolver() {
+        this(new WildcardPermissionResolver());
+    }
+
+    public InterningPermissionResolver(PermissionResolver delegate) {
+        this.delegate = delegate;
+        this.pool = createPool(maxSize);
+    }
+
+    private static Cache<String, Permission> createPool(long maxSize) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    public PermissionResolver getDelegate() {
+        return delegate;
+    }
+
+    public void setDelegate(PermissionResolver delegate) {
+        this.delegate = delegate;
+        clear();
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 调整池大小，已有的共享实例和命中统计保留，超出新大小的部分被淘汰
+     *
+     * @param maxSize 池大小
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        Cache<String, Permission> old = this.pool;
+        Cache<String, Permission> resized = createPool(maxSize);
+        resized.putAll(old.asMap());
+        this.maxSize = maxSize;
+        this.previousStats = previousStats.plus(old.stats());
+        this.pool = resized;
+    }
+
+    @Override
+    public Permission resolvePermission(String permissionString) {
+        Cache<String, Permission> pool = this.pool;
+        Permission permission = pool.getIfPresent(permissionString);
+        if (permission == null) {
+            permission = delegate.resolvePermission(permissionString);
+            Permission existing = pool.asMap().putIfAbsent(permissionString, permission);
+            if (existing != null) {
+                permission = existing;
+            }
+        }
+        return permission;
+    }
+
+    public long getPoolSize() {
+        return pool.size();
+    }
+
+    private CacheStats stats() {
+        return previousStats.plus(pool.stats());
+    }
+
+    public double getHitRate() {
+        return stats().hitRate();
+    }
+
+    public long getHitCount() {
+        return stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return stats().missCount();
+    }
+
+    public void clear() {
+        pool.invalidateAll();
+    }
+}
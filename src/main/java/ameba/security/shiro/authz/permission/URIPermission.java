@@ -5,49 +5,130 @@ import org.apache.shiro.authz.Permission;
 
 import java.io.Serializable;
 import java.net.URI;
+import java.util.Objects;
 
 /**
  * @author icode
  */
 public class URIPermission implements Permission, Serializable {
     protected static final String PART_DIVIDER_TOKEN = ":";
-    protected String uri;
-    protected URI requestUri;
-    protected String method;
-    private URIMatcher matcher;
+    protected final String uri;
+    /**
+     * 请求形式为请求地址，字符串形式为构造时解析出的地址
+     */
+    protected final URI requestUri;
+    /**
+     * 请求形式为请求方法，字符串形式为构造时解析出的方法
+     */
+    protected final String method;
+    /**
+     * 请求地址已解码的路径和查询参数，构造时读取一次
+     */
+    private final String requestPath;
+    private final String requestQuery;
+    private volatile URIMatcher matcher;
 
+    /**
+     * @param uri 地址:方法 形式的权限，为 null 时不持有也不被包含任何权限
+     */
     public URIPermission(String uri) {
         this.uri = uri;
+        URI parsedUri = null;
+        String parsedMethod = null;
+        String[] um = uri == null ? null : uri.trim().split(PART_DIVIDER_TOKEN);
+        if (um != null && um.length > 1) {
+            try {
+                parsedUri = URI.create(um[0]);
+                parsedMethod = um[1];
+            } catch (IllegalArgumentException e) {
+                // 无法解析为地址的权限（如正则规则）只能作为被持有的权限使用
+                parsedUri = null;
+            }
+        }
+        this.requestUri = parsedUri;
+        this.method = parsedMethod;
+        this.requestPath = parsedUri == null ? null : parsedUri.getPath();
+        this.requestQuery = parsedUri == null ? null : parsedUri.getQuery();
     }
 
     public URIPermission(URI requestUri, String method) {
+        this.uri = null;
         this.requestUri = requestUri;
         this.method = method;
+        this.requestPath = requestUri == null ? null : requestUri.getPath();
+        this.requestQuery = requestUri == null ? null : requestUri.getQuery();
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public URI getRequestUri() {
+        return requestUri;
+    }
+
+    /**
+     * @return 请求地址已解码的路径，没有请求地址时返回 null
+     */
+    public String getRequestPath() {
+        return requestPath;
+    }
+
+    public String getRequestQuery() {
+        return requestQuery;
+    }
+
+    public String getMethod() {
+        return method;
     }
 
     public URIMatcher getMatcher() {
-        if (matcher == null) {
+        URIMatcher m = matcher;
+        if (m == null) {
             synchronized (this) {
-                if (matcher == null) {
-                    matcher = new URIMatcher(uri);
+                m = matcher;
+                if (m == null) {
+                    m = new URIMatcher(uri);
+                    matcher = m;
                 }
             }
         }
-        return matcher;
+        return m;
     }
 
     @Override
     public boolean implies(Permission p) {
+        if (uri == null) {
+            return false;
+        }
         if (p instanceof URIPermission) {
             URIPermission op = ((URIPermission) p);
-            if (op.method == null) {
-                String otherUri = op.uri;
-                String[] um = otherUri.trim().split(PART_DIVIDER_TOKEN);
-                return um.length > 1 && getMatcher().matches(URI.create(um[0]), um[1]);
-            } else if (op.requestUri != null) {
-                return getMatcher().matches(op.requestUri, op.method);
+            if (op.requestPath != null && op.method != null) {
+                return getMatcher().matches(op.requestPath, op.requestQuery, op.method);
             }
         }
         return false;
     }
+
+    /**
+     * 相同地址、请求地址和方法的权限相等，用于请求内的权限检查缓存
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        URIPermission that = (URIPermission) o;
+        return Objects.equals(uri, that.uri)
+                && Objects.equals(requestUri, that.requestUri)
+                && Objects.equals(method, that.method);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(uri, requestUri, method);
+    }
 }
@@ -0,0 +1,67 @@
+package ameba.security.shiro.cache;
+
+import ameba.cache.Cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用 ameba.cache 的缓存后端
+ * <br>
+ * 值经 {@link CacheCodec} 编码为 byte[] 后写入，默认使用 {@link CompactCacheCodec}；
+ * 读取到旧版本直接写入的对象时原样返回，Java 序列化格式的 byte[] 由编解码按旧格式读取。
+ *
+ * @author icode
+ */
+public class AmebaCacheStore implements CacheStore {
+
+    private final CacheCodec codec;
+
+    public AmebaCacheStore() {
+        this(new CompactCacheCodec());
+    }
+
+    public AmebaCacheStore(CacheCodec codec) {
+        this.codec = codec;
+    }
+
+    public CacheCodec getCodec() {
+        return codec;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V> V get(String key) {
+        return (V) decode(Cache.get(key));
+    }
+
+    @Override
+    public void set(String key, Object value) {
+        if (value == null) {
+            delete(key);
+            return;
+        }
+        Cache.syncSet(key, encode(value));
+    }
+
+    @Override
+    public boolean add(String key, Object value, long ttlMillis) {
+        int expiration = (int) Math.max(TimeUnit.MILLISECONDS.toSeconds(ttlMillis), 1);
+        return Cache.syncAdd(key, encode(value), expiration);
+    }
+
+    @Override
+    public void delete(String key) {
+        Cache.delete(key);
+    }
+
+    byte[] encode(Object value) {
+        return codec.encode(value);
+    }
+
+    Object decode(Object stored) {
+        if (stored instanceof byte[]) {
+            return codec.decode((byte[]) stored);
+        }
+        return stored;
+    }
+}
@@ -0,0 +1,208 @@
+package ameba.security.shiro.cache;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 有容量与过期限制的 Map
+ * <br>
+ * 按 LRU 顺序淘汰，容量已满时使用 TinyLFU 准入：新 key 的近期访问频率高于待淘汰 key 时才会写入，
+ * 避免只访问一次的 key 挤掉高频 key，未准入的写入直接丢弃，put 返回 null。keySet/values/entrySet 返回快照。
+ *
+ * @author icode
+ */
+public class BoundedMap<K, V> extends AbstractMap<K, V> {
+
+    /**
+     * 每次写入时最多检查的过期条目数
+     */
+    private static final int EXPIRE_SCAN_LIMIT = 8;
+
+    private final CacheSpec spec;
+    private final LinkedHashMap<K, Node<V>> data;
+    private final FrequencySketch sketch;
+    private long evictionCount;
+    private long rejectionCount;
+
+    public BoundedMap(CacheSpec spec) {
+        this.spec = spec;
+        this.data = new LinkedHashMap<>(16, 0.75f, true);
+        this.sketch = spec.getMaxEntries() > 0 ? new FrequencySketch(spec.getMaxEntries()) : null;
+    }
+
+    public CacheSpec getSpec() {
+        return spec;
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    private boolean isExpired(Node<V> node, long now) {
+        return (spec.getExpireAfterWriteMillis() > 0
+                && now - node.writeTime >= spec.getExpireAfterWriteMillis())
+                || (spec.getExpireAfterAccessMillis() > 0
+                && now - node.accessTime >= spec.getExpireAfterAccessMillis());
+    }
+
+    @Override
+    public synchronized V get(Object key) {
+        if (key == null) {
+            return null;
+        }
+        if (sketch != null) {
+            sketch.increment(key);
+        }
+        Node<V> node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        long now = now();
+        if (isExpired(node, now)) {
+            data.remove(key);
+            evictionCount++;
+            return null;
+        }
+        node.accessTime = now;
+        return node.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public synchronized V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        long now = now();
+        if (sketch != null) {
+            sketch.increment(key);
+        }
+        Node<V> previous = data.get(key);
+        if (previous != null) {
+            data.put(key, new Node<>(value, now));
+            return isExpired(previous, now) ? null : previous.value;
+        }
+        expire(now, EXPIRE_SCAN_LIMIT);
+        if (sketch != null && data.size() >= spec.getMaxEntries()) {
+            Iterator<Map.Entry<K, Node<V>>> it = data.entrySet().iterator();
+            Map.Entry<K, Node<V>> victim = it.next();
+            if (sketch.frequency(key) <= sketch.frequency(victim.getKey())) {
+                rejectionCount++;
+                return null;
+            }
+            it.remove();
+            evictionCount++;
+        }
+        data.put(key, new Node<>(value, now));
+        return null;
+    }
+
+    private void expire(long now, int limit) {
+        if (spec.getExpireAfterWriteMillis() <= 0 && spec.getExpireAfterAccessMillis() <= 0) {
+            return;
+        }
+        Iterator<Node<V>> it = data.values().iterator();
+        for (int i = 0; it.hasNext() && i < limit; i++) {
+            if (isExpired(it.next(), now)) {
+                it.remove();
+                evictionCount++;
+            }
+        }
+    }
+
+    /**
+     * 移除全部已过期条目
+     */
+    public synchronized void cleanUp() {
+        expire(now(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized V remove(Object key) {
+        Node<V> node = data.remove(key);
+        return node == null || isExpired(node, now()) ? null : node.value;
+    }
+
+    @Override
+    public synchronized void clear() {
+        data.clear();
+    }
+
+    @Override
+    public synchronized int size() {
+        return data.size();
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return 因访问频率过低未被写入的次数
+     */
+    public synchronized long getRejectionCount() {
+        return rejectionCount;
+    }
+
+    /**
+     * 将未过期的条目复制到 target
+     */
+    public synchronized void copyTo(Map<? super K, ? super V> target) {
+        long now = now();
+        for (Map.Entry<K, Node<V>> entry : data.entrySet()) {
+            if (!isExpired(entry.getValue(), now)) {
+                target.put(entry.getKey(), entry.getValue().value);
+            }
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Map<K, V> snapshot = Maps.newLinkedHashMap();
+        copyTo(snapshot);
+        return Collections.unmodifiableMap(snapshot).entrySet();
+    }
+
+    @Override
+    public Set<K> keySet() {
+        Map<K, V> snapshot = Maps.newLinkedHashMap();
+        for (Entry<K, V> entry : entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue());
+        }
+        return Collections.unmodifiableSet(snapshot.keySet());
+    }
+
+    @Override
+    public Collection<V> values() {
+        List<V> values = Lists.newArrayList();
+        for (Entry<K, V> entry : entrySet()) {
+            values.add(entry.getValue());
+        }
+        return Collections.unmodifiableList(values);
+    }
+
+    private static final class Node<V> {
+        private final V value;
+        private final long writeTime;
+        private long accessTime;
+
+        private Node(V value, long now) {
+            this.value = value;
+            this.writeTime = now;
+            this.accessTime = now;
+        }
+    }
+}
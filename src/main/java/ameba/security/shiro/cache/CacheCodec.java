@@ -0,0 +1,15 @@
+package ameba.security.shiro.cache;
+
+import org.apache.shiro.cache.CacheException;
+
+/**
+ * 缓存值编解码
+ *
+ * @author icode
+ */
+public interface CacheCodec {
+
+    byte[] encode(Object value) throws CacheException;
+
+    Object decode(byte[] bytes) throws CacheException;
+}
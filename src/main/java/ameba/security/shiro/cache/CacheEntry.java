@@ -0,0 +1,28 @@
+package ameba.security.shiro.cache;
+
+import java.io.Serializable;
+
+/**
+ * 单独存储的缓存条目，保存原始 key 用于识别 key 字符串冲突
+ *
+ * @author icode
+ */
+public class CacheEntry<K, V> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final K key;
+    private final V value;
+
+    public CacheEntry(K key, V value) {
+        this.key = key;
+        this.value = value;
+    }
+
+    public K getKey() {
+        return key;
+    }
+
+    public V getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,141 @@
+package ameba.security.shiro.cache;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.shiro.config.ConfigurationException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存容量与过期配置
+ * <br>
+ * 格式为分号分隔的 key=value，时长可带单位 ms/s/m/h/d，不带单位为毫秒：
+ * <pre>
+ * maxEntries=10000;expireAfterWrite=30m;expireAfterAccess=10m
+ * </pre>
+ *
+ * @author icode
+ */
+public class CacheSpec {
+
+    public static final CacheSpec UNBOUNDED = new CacheSpec(0, 0, 0);
+
+    private final long maxEntries;
+    private final long expireAfterWriteMillis;
+    private final long expireAfterAccessMillis;
+
+    public CacheSpec(long maxEntries, long expireAfterWriteMillis, long expireAfterAccessMillis) {
+        this.maxEntries = maxEntries;
+        this.expireAfterWriteMillis = expireAfterWriteMillis;
+        this.expireAfterAccessMillis = expireAfterAccessMillis;
+    }
+
+    /**
+     * @param spec 配置字符串
+     * @return 缓存配置，空字符串返回 {@link #UNBOUNDED}
+     * @throws ConfigurationException 配置格式错误
+     */
+    public static CacheSpec parse(String spec) {
+        if (StringUtils.isBlank(spec)) {
+            return UNBOUNDED;
+        }
+        long maxEntries = 0;
+        long expireAfterWrite = 0;
+        long expireAfterAccess = 0;
+        for (String option : StringUtils.split(spec, ';')) {
+            option = option.trim();
+            if (option.isEmpty()) {
+                continue;
+            }
+            int i = option.indexOf('=');
+            if (i < 0) {
+                throw new ConfigurationException("Invalid cache spec option '" + option + "' in: " + spec);
+            }
+            String key = option.substring(0, i).trim();
+            String value = option.substring(i + 1).trim();
+            switch (key) {
+                case "maxEntries":
+                    maxEntries = parseLong(value, spec);
+                    break;
+                case "expireAfterWrite":
+                    expireAfterWrite = parseDuration(value, spec);
+                    break;
+                case "expireAfterAccess":
+                    expireAfterAccess = parseDuration(value, spec);
+                    break;
+                default:
+                    throw new ConfigurationException("Unknown cache spec option '" + key + "' in: " + spec);
+            }
+        }
+        return new CacheSpec(maxEntries, expireAfterWrite, expireAfterAccess);
+    }
+
+    private static long parseLong(String value, String spec) {
+        try {
+            long v = Long.parseLong(value);
+            if (v < 0) {
+                throw new NumberFormatException();
+            }
+            return v;
+        } catch (NumberFormatException e) {
+            throw new ConfigurationException("Invalid number '" + value + "' in cache spec: " + spec, e);
+        }
+    }
+
+    private static long parseDuration(String value, String spec) {
+        int i = value.length();
+        while (i > 0 && !Character.isDigit(value.charAt(i - 1))) {
+            i--;
+        }
+        long amount = parseLong(value.substring(0, i).trim(), spec);
+        String unit = value.substring(i).trim();
+        switch (unit) {
+            case "":
+            case "ms":
+                return amount;
+            case "s":
+                return TimeUnit.SECONDS.toMillis(amount);
+            case "m":
+                return TimeUnit.MINUTES.toMillis(amount);
+            case "h":
+                return TimeUnit.HOURS.toMillis(amount);
+            case "d":
+                return TimeUnit.DAYS.toMillis(amount);
+            default:
+                throw new ConfigurationException("Invalid duration unit '" + unit + "' in cache spec: " + spec);
+        }
+    }
+
+    /**
+     * 达到最大条目数后，新 key 只有近期访问频率高于待淘汰 key 时才会写入，否则该次写入被丢弃
+     *
+     * @return 最大条目数，0 为不限制
+     */
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return 写入后的存活时间，0 为不过期
+     */
+    public long getExpireAfterWriteMillis() {
+        return expireAfterWriteMillis;
+    }
+
+    /**
+     * @return 最后访问后的存活时间，0 为不过期
+     */
+    public long getExpireAfterAccessMillis() {
+        return expireAfterAccessMillis;
+    }
+
+    public boolean isBounded() {
+        return maxEntries > 0 || expireAfterWriteMillis > 0 || expireAfterAccessMillis > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "maxEntries=" + maxEntries
+                + ";expireAfterWrite=" + expireAfterWriteMillis
+                + ";expireAfterAccess=" + expireAfterAccessMillis;
+    }
+}
@@ -0,0 +1,33 @@
+package ameba.security.shiro.cache;
+
+/**
+ * 缓存后端
+ *
+ * @author icode
+ */
+public interface CacheStore {
+
+    <V> V get(String key);
+
+    void set(String key, Object value);
+
+    void delete(String key);
+
+    /**
+     * key 不存在时写入，用于多个节点之间的互斥
+     * <br>
+     * 共享缓存的实现必须是原子操作；默认实现先读后写，只适用于单节点。
+     *
+     * @param key       key
+     * @param value     值
+     * @param ttlMillis 存活时间（毫秒），持有者异常退出后到期自动删除，进程内的实现可以忽略
+     * @return 是否写入
+     */
+    default boolean add(String key, Object value, long ttlMillis) {
+        if (get(key) != null) {
+            return false;
+        }
+        set(key, value);
+        return true;
+    }
+}
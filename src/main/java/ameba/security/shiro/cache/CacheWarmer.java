@@ -0,0 +1,318 @@
+package ameba.security.shiro.cache;
+
+import ameba.security.shiro.realm.NegativeCachingRealm;
+import ameba.security.shiro.realm.URIAuthorizingRealm;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.shiro.mgt.RealmSecurityManager;
+import org.apache.shiro.mgt.SecurityManager;
+import org.apache.shiro.realm.AuthorizingRealm;
+import org.apache.shiro.realm.Realm;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 启动时预热授权缓存
+ * <br>
+ * 运行期间用随时间衰减的频率估算统计近期访问最多的身份，关闭时将前 topN 个写入快照文件；
+ * 下次启动时在后台以有限的并发加载快照中身份的授权信息，超过 deadline 后停止预热，不阻塞启动。
+ * 必须配置快照文件，未配置时不预热；快照只接受紧凑格式，不使用 Java 序列化，
+ * 无法用紧凑格式保存的身份不写入快照。
+ * <pre>
+ * security.cache.warmup.enabled=true
+ * security.cache.warmup.file=/var/lib/app/shiro-warmup.bin
+ * security.cache.warmup.topN=1000
+ * security.cache.warmup.concurrency=4
+ * security.cache.warmup.deadline=5000
+ * </pre>
+ *
+ * @author icode
+ */
+public class CacheWarmer {
+
+    public static final String ENABLED_KEY = "security.cache.warmup.enabled";
+    public static final String FILE_KEY = "security.cache.warmup.file";
+    public static final String TOP_N_KEY = "security.cache.warmup.topN";
+    public static final String CONCURRENCY_KEY = "security.cache.warmup.concurrency";
+    public static final String DEADLINE_KEY = "security.cache.warmup.deadline";
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheWarmer.class);
+    private static final String WARM_UP_ROLE = CacheWarmer.class.getName() + ".role";
+
+    private final SecurityManager securityManager;
+    private final boolean enabled;
+    private final Path file;
+    private final int topN;
+    private final int concurrency;
+    private final long deadlineMillis;
+    private final int maxTracked;
+    /**
+     * 候选身份，超过 maxTracked 时只保留估算频率较高的一半，与 sketch 一起由 sketchLock 保护
+     */
+    private final Set<PrincipalCollection> candidates = Sets.newHashSet();
+    private final FrequencySketch sketch;
+    private final Lock sketchLock = new ReentrantLock();
+    private final CacheCodec codec = new CompactCacheCodec(false);
+
+    public CacheWarmer(SecurityManager securityManager, boolean enabled, Path file,
+                       int topN, int concurrency, long deadlineMillis) {
+        this.securityManager = securityManager;
+        this.enabled = enabled && file != null && topN > 0;
+        this.file = file;
+        this.topN = topN;
+        this.concurrency = Math.max(concurrency, 1);
+        this.deadlineMillis = deadlineMillis;
+        this.maxTracked = Math.max(topN * 10, 16);
+        this.sketch = this.enabled ? new FrequencySketch(maxTracked) : null;
+    }
+
+    /**
+     * 从配置创建
+     *
+     * @param securityManager SecurityManager
+     * @param properties      应用配置
+     * @return CacheWarmer，未配置快照文件时不预热
+     */
+    public static CacheWarmer create(SecurityManager securityManager, Map<String, Object> properties) {
+        boolean enabled = Boolean.parseBoolean(String.valueOf(properties.get(ENABLED_KEY)));
+        Object fileValue = properties.get(FILE_KEY);
+        Path file = null;
+        if (fileValue != null && !fileValue.toString().trim().isEmpty()) {
+            file = Paths.get(fileValue.toString().trim());
+        } else if (enabled) {
+            logger.warn("Cache warm up is disabled, {} is not set", FILE_KEY);
+        }
+        return new CacheWarmer(securityManager,
+                enabled,
+                file,
+                intValue(properties.get(TOP_N_KEY), 1000),
+                intValue(properties.get(CONCURRENCY_KEY), 4),
+                intValue(properties.get(DEADLINE_KEY), 5000));
+    }
+
+    private static int intValue(Object value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid cache warm up config value: {}", value);
+            return defaultValue;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param principals 身份
+     */
+    public void record(PrincipalCollection principals) {
+        if (!enabled || principals == null || principals.isEmpty()) {
+            return;
+        }
+        // 计数只是估算，其他线程正在计数时跳过本次，请求线程不等待
+        if (!sketchLock.tryLock()) {
+            return;
+        }
+        try {
+            sketch.increment(principals);
+            if (candidates.add(principals) && candidates.size() > maxTracked) {
+                prune(maxTracked / 2);
+            }
+        } finally {
+            sketchLock.unlock();
+        }
+    }
+
+    /**
+     * 只保留估算频率最高的 size 个候选
+     */
+    private void prune(int size) {
+        List<PrincipalCollection> ranked = rank();
+        for (int i = size; i < ranked.size(); i++) {
+            candidates.remove(ranked.get(i));
+        }
+    }
+
+    private List<PrincipalCollection> rank() {
+        List<PrincipalCollection> ranked = Lists.newArrayList(candidates);
+        Map<PrincipalCollection, Integer> frequencies = Maps.newHashMapWithExpectedSize(ranked.size());
+        for (PrincipalCollection principals : ranked) {
+            frequencies.put(principals, sketch.frequency(principals));
+        }
+        ranked.sort((a, b) -> Integer.compare(frequencies.get(b), frequencies.get(a)));
+        return ranked;
+    }
+
+    /**
+     * @return 近期访问最多的前 topN 个身份
+     */
+    public List<PrincipalCollection> getTopPrincipals() {
+        if (!enabled) {
+            return Collections.emptyList();
+        }
+        List<PrincipalCollection> ranked;
+        sketchLock.lock();
+        try {
+            ranked = rank();
+        } finally {
+            sketchLock.unlock();
+        }
+        return ranked.size() > topN ? Lists.newArrayList(ranked.subList(0, topN)) : ranked;
+    }
+
+    /**
+     * 将访问最多的身份写入快照文件
+     */
+    public void saveSnapshot() {
+        if (!enabled) {
+            return;
+        }
+        List<PrincipalCollection> top = Lists.newArrayList();
+        for (PrincipalCollection principals : getTopPrincipals()) {
+            try {
+                codec.encode(principals);
+                top.add(principals);
+            } catch (RuntimeException e) {
+                logger.debug("Skip principals not supported by cache warm up snapshot: {}", principals);
+            }
+        }
+        if (top.isEmpty()) {
+            return;
+        }
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            Files.write(temp, codec.encode(new ArrayList<>(top)));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("Saved {} principals to cache warm up snapshot {}", top.size(), file);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to save cache warm up snapshot " + file, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected List<PrincipalCollection> loadSnapshot() {
+        if (!Files.isReadable(file)) {
+            return Collections.emptyList();
+        }
+        try {
+            Object value = codec.decode(Files.readAllBytes(file));
+            if (value instanceof List) {
+                return (List<PrincipalCollection>) value;
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to read cache warm up snapshot " + file, e);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 在后台线程中预热，立即返回
+     */
+    public void warmUpAsync() {
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new ThreadFactoryBuilder()
+                .setNameFormat("shiro-cache-warm-up-main")
+                .setDaemon(true)
+                .build()
+                .newThread(() -> {
+                    try {
+                        warmUp();
+                    } catch (RuntimeException e) {
+                        logger.warn("Cache warm up failed", e);
+                    }
+                });
+        thread.start();
+    }
+
+    /**
+     * 加载快照中身份的授权信息，最多等待 deadline 毫秒
+     *
+     * @return 已加载的身份数
+     */
+    public int warmUp() {
+        if (!enabled || !(securityManager instanceof RealmSecurityManager)) {
+            return 0;
+        }
+        Collection<Realm> realms = ((RealmSecurityManager) securityManager).getRealms();
+        List<PrincipalCollection> principals = loadSnapshot();
+        if (realms == null || principals.isEmpty()) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        AtomicInteger loaded = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, principals.size()),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("shiro-cache-warm-up-%d")
+                        .setDaemon(true)
+                        .build());
+        for (PrincipalCollection principal : principals) {
+            executor.execute(() -> {
+                try {
+                    for (Realm realm : realms) {
+                        warmUp(realm, principal);
+                    }
+                    loaded.incrementAndGet();
+                } catch (RuntimeException e) {
+                    logger.debug("Unable to warm up authorization info for " + principal, e);
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(deadlineMillis, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Warmed up authorization info for {}/{} principals in {}ms",
+                loaded.get(), principals.size(), System.currentTimeMillis() - start);
+        return loaded.get();
+    }
+
+    protected void warmUp(Realm realm, PrincipalCollection principals) {
+        if (realm instanceof NegativeCachingRealm) {
+            realm = ((NegativeCachingRealm) realm).getRealm();
+        }
+        if (realm instanceof URIAuthorizingRealm) {
+            ((URIAuthorizingRealm) realm).getCompiledAuthorizationInfo(principals);
+        } else if (realm instanceof AuthorizingRealm) {
+            // 通过角色检查触发授权信息的加载和缓存
+            ((AuthorizingRealm) realm).hasRole(principals, WARM_UP_ROLE);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package ameba.security.shiro.cache;
+
+import ameba.security.shiro.authz.CompiledAuthorizationInfo;
+import ameba.security.shiro.authz.permission.URIPermission;
+import ameba.security.shiro.util.BinaryReader;
+import ameba.security.shiro.util.BinaryWriter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.shiro.authc.SimpleAuthenticationInfo;
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.SimpleAuthorizationInfo;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.apache.shiro.cache.CacheException;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.apache.shiro.util.ByteSource;
+import org.apache.shiro.util.SimpleByteSource;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 紧凑二进制编解码
+ * <br>
+ * 对 Shiro 的授权、认证信息、身份集合及缓存包装类使用专用格式：长度为 varint，
+ * 角色、权限、realm 名称等字符串在同一个值内只写入一次，WildcardPermission 按已解析的部分写入，
+ * 解码时不再重新解析。其他类型使用 Java 序列化；以 Java 序列化头开头的数据交给 {@link SerializationCodec}。
+ * 数据来源不可信时使用 {@code new CompactCacheCodec(false)}，不支持的类型和 Java 序列化数据均抛出 {@link CacheException}。
+ *
+ * @author icode
+ */
+public class CompactCacheCodec implements CacheCodec {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int LONG = 2;
+    private static final int INTEGER = 3;
+    private static final int TRUE = 4;
+    private static final int FALSE = 5;
+    private static final int BYTES = 6;
+    private static final int CHARS = 7;
+    private static final int BYTE_SOURCE = 8;
+    private static final int LIST = 9;
+    private static final int SET = 10;
+    private static final int MAP = 11;
+    private static final int SIMPLE_AUTHORIZATION_INFO = 12;
+    private static final int COMPILED_AUTHORIZATION_INFO = 13;
+    private static final int SIMPLE_AUTHENTICATION_INFO = 14;
+    private static final int PRINCIPAL_COLLECTION = 15;
+    private static final int WILDCARD_PERMISSION = 16;
+    private static final int URI_PERMISSION = 17;
+    private static final int REQUEST_URI_PERMISSION = 18;
+    private static final int CACHE_ENTRY = 19;
+    private static final int SERIALIZED = 127;
+
+    private final SerializationCodec serialization = new SerializationCodec();
+    private final boolean serializationAllowed;
+
+    public CompactCacheCodec() {
+        this(true);
+    }
+
+    /**
+     * @param serializationAllowed 是否对其他类型使用 Java 序列化，并接受 Java 序列化的数据
+     */
+    public CompactCacheCodec(boolean serializationAllowed) {
+        this.serializationAllowed = serializationAllowed;
+    }
+
+    @Override
+    public byte[] encode(Object value) throws CacheException {
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeByte(FORMAT_VERSION);
+        write(writer, value);
+        return writer.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] bytes) throws CacheException {
+        if (bytes.length >= 2 && (bytes[0] & 0xff) == 0xAC && (bytes[1] & 0xff) == 0xED) {
+            return deserialize(bytes);
+        }
+        try {
+            BinaryReader reader = new BinaryReader(bytes);
+            int version = reader.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new CacheException("Unsupported compact cache format version: " + version);
+            }
+            return read(reader);
+        } catch (IllegalArgumentException e) {
+            throw new CacheException("Malformed compact cache value", e);
+        }
+    }
+
+    protected void write(BinaryWriter writer, Object value) {
+        if (value == null) {
+            writer.writeByte(NULL);
+            return;
+        }
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            writer.writeByte(STRING).writeString((String) value);
+        } else if (type == Long.class) {
+            writer.writeByte(LONG).writeSignedVarlong((Long) value);
+        } else if (type == Integer.class) {
+            writer.writeByte(INTEGER).writeSignedVarlong((Integer) value);
+        } else if (type == Boolean.class) {
+            writer.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (type == byte[].class) {
+            writer.writeByte(BYTES).writeBytes((byte[]) value);
+        } else if (type == char[].class) {
+            writer.writeByte(CHARS).writeString(new String((char[]) value));
+        } else if (type == SimpleByteSource.class) {
+            writer.writeByte(BYTE_SOURCE).writeBytes(((ByteSource) value).getBytes());
+        } else if (type == ArrayList.class) {
+            writer.writeByte(LIST);
+            writeCollection(writer, (Collection<?>) value);
+        } else if (type == HashSet.class || type == LinkedHashSet.class) {
+            writer.writeByte(SET);
+            writeCollection(writer, (Collection<?>) value);
+        } else if (type == HashMap.class || type == LinkedHashMap.class) {
+            writer.writeByte(MAP);
+            Map<?, ?> map = (Map<?, ?>) value;
+            writer.writeVarint(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(writer, entry.getKey());
+                write(writer, entry.getValue());
+            }
+        } else if (type == SimpleAuthorizationInfo.class) {
+            writer.writeByte(SIMPLE_AUTHORIZATION_INFO);
+            writeAuthorizationInfo(writer, (AuthorizationInfo) value);
+        } else if (type == CompiledAuthorizationInfo.class
+                && ((CompiledAuthorizationInfo) value).getDelegate().getClass() == SimpleAuthorizationInfo.class) {
+            writer.writeByte(COMPILED_AUTHORIZATION_INFO);
+            writeAuthorizationInfo(writer, ((CompiledAuthorizationInfo) value).getDelegate());
+        } else if (type == SimpleAuthenticationInfo.class) {
+            SimpleAuthenticationInfo info = (SimpleAuthenticationInfo) value;
+            writer.writeByte(SIMPLE_AUTHENTICATION_INFO);
+            write(writer, info.getPrincipals());
+            write(writer, info.getCredentials());
+            write(writer, info.getCredentialsSalt());
+        } else if (type == SimplePrincipalCollection.class) {
+            writer.writeByte(PRINCIPAL_COLLECTION);
+            writePrincipals(writer, (PrincipalCollection) value);
+        } else if (type == WildcardPermission.class || type == PartsPermission.class) {
+            writer.writeByte(WILDCARD_PERMISSION);
+            writeWildcardPermission(writer, (WildcardPermission) value);
+        } else if (type == URIPermission.class) {
+            URIPermission permission = (URIPermission) value;
+            if (permission.getUri() != null) {
+                writer.writeByte(URI_PERMISSION).writeString(permission.getUri());
+            } else {
+                writer.writeByte(REQUEST_URI_PERMISSION)
+                        .writeString(permission.getRequestUri().toString())
+                        .writeString(permission.getMethod());
+            }
+        } else if (type == CacheEntry.class) {
+            CacheEntry<?, ?> entry = (CacheEntry<?, ?>) value;
+            writer.writeByte(CACHE_ENTRY);
+            write(writer, entry.getKey());
+            write(writer, entry.getValue());
+        } else if (serializationAllowed) {
+            writer.writeByte(SERIALIZED).writeBytes(serialization.encode(value));
+        } else {
+            throw new CacheException("Unsupported compact cache value type: " + type.getName());
+        }
+    }
+
+    private void writeCollection(BinaryWriter writer, Collection<?> collection) {
+        writer.writeVarint(collection.size());
+        for (Object item : collection) {
+            write(writer, item);
+        }
+    }
+
+    private void writeStrings(BinaryWriter writer, Collection<String> strings) {
+        if (strings == null) {
+            writer.writeVarint(0);
+            return;
+        }
+        writer.writeVarint(strings.size() + 1);
+        for (String string : strings) {
+            writer.writeString(string);
+        }
+    }
+
+    private void writeAuthorizationInfo(BinaryWriter writer, AuthorizationInfo info) {
+        writeStrings(writer, info.getRoles());
+        writeStrings(writer, info.getStringPermissions());
+        Collection<Permission> permissions = info.getObjectPermissions();
+        if (permissions == null) {
+            writer.writeVarint(0);
+        } else {
+            writer.writeVarint(permissions.size() + 1);
+            for (Permission permission : permissions) {
+                write(writer, permission);
+            }
+        }
+    }
+
+    private void writePrincipals(BinaryWriter writer, PrincipalCollection principals) {
+        Set<String> realms = principals.getRealmNames();
+        writer.writeVarint(realms.size());
+        for (String realm : realms) {
+            writer.writeString(realm);
+            writeCollection(writer, principals.fromRealm(realm));
+        }
+    }
+
+    private void writeWildcardPermission(BinaryWriter writer, WildcardPermission permission) {
+        // toString 按已解析的部分输出，部分之间为 ':'，子部分之间为 ','
+        String[] parts = StringUtils.split(permission.toString(), ':');
+        writer.writeVarint(parts.length);
+        for (String part : parts) {
+            String[] subparts = StringUtils.split(part, ',');
+            writer.writeVarint(subparts.length);
+            for (String subpart : subparts) {
+                writer.writeString(subpart);
+            }
+        }
+    }
+
+    protected Object read(BinaryReader reader) {
+        int tag = reader.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return reader.readString();
+            case LONG:
+                return reader.readSignedVarlong();
+            case INTEGER:
+                return (int) reader.readSignedVarlong();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case BYTES:
+                return reader.readBytes();
+            case CHARS:
+                return reader.readString().toCharArray();
+            case BYTE_SOURCE:
+                return new SimpleByteSource(reader.readBytes());
+            case LIST:
+                return readCollection(reader, Lists.newArrayList());
+            case SET:
+                return readCollection(reader, Sets.newLinkedHashSet());
+            case MAP: {
+                int size = reader.readVarint();
+                Map<Object, Object> map = Maps.newLinkedHashMap();
+                for (int i = 0; i < size; i++) {
+                    map.put(read(reader), read(reader));
+                }
+                return map;
+            }
+            case SIMPLE_AUTHORIZATION_INFO:
+                return readAuthorizationInfo(reader);
+            case COMPILED_AUTHORIZATION_INFO:
+                return new CompiledAuthorizationInfo(readAuthorizationInfo(reader));
+            case SIMPLE_AUTHENTICATION_INFO: {
+                SimpleAuthenticationInfo info = new SimpleAuthenticationInfo();
+                info.setPrincipals((PrincipalCollection) read(reader));
+                info.setCredentials(read(reader));
+                info.setCredentialsSalt((ByteSource) read(reader));
+                return info;
+            }
+            case PRINCIPAL_COLLECTION:
+                return readPrincipals(reader);
+            case WILDCARD_PERMISSION:
+                return readWildcardPermission(reader);
+            case URI_PERMISSION:
+                return new URIPermission(reader.readString());
+            case REQUEST_URI_PERMISSION:
+                return new URIPermission(URI.create(reader.readString()), reader.readString());
+            case CACHE_ENTRY:
+                return new CacheEntry<>(read(reader), read(reader));
+            case SERIALIZED:
+                return deserialize(reader.readBytes());
+            default:
+                throw new IllegalArgumentException("Unknown compact cache tag " + tag + " at " + reader.position());
+        }
+    }
+
+    private Object deserialize(byte[] bytes) {
+        if (!serializationAllowed) {
+            throw new CacheException("Java serialized cache value is not allowed");
+        }
+        return serialization.decode(bytes);
+    }
+
+    private Collection<Object> readCollection(BinaryReader reader, Collection<Object> collection) {
+        int size = reader.readVarint();
+        for (int i = 0; i < size; i++) {
+            collection.add(read(reader));
+        }
+        return collection;
+    }
+
+    private Set<String> readStrings(BinaryReader reader) {
+        int size = reader.readVarint();
+        if (size == 0) {
+            return null;
+        }
+        Set<String> strings = Sets.newHashSetWithExpectedSize(size - 1);
+        for (int i = 1; i < size; i++) {
+            strings.add(reader.readString());
+        }
+        return strings;
+    }
+
+    private SimpleAuthorizationInfo readAuthorizationInfo(BinaryReader reader) {
+        SimpleAuthorizationInfo info = new SimpleAuthorizationInfo(readStrings(reader));
+        info.setStringPermissions(readStrings(reader));
+        int size = reader.readVarint();
+        if (size > 0) {
+            Set<Permission> permissions = Sets.newHashSetWithExpectedSize(size - 1);
+            for (int i = 1; i < size; i++) {
+                permissions.add((Permission) read(reader));
+            }
+            info.setObjectPermissions(permissions);
+        }
+        return info;
+    }
+
+    private PrincipalCollection readPrincipals(BinaryReader reader) {
+        SimplePrincipalCollection principals = new SimplePrincipalCollection();
+        int realms = reader.readVarint();
+        for (int i = 0; i < realms; i++) {
+            String realm = reader.readString();
+            principals.addAll(readCollection(reader, Lists.newArrayList()), realm);
+        }
+        return principals;
+    }
+
+    private WildcardPermission readWildcardPermission(BinaryReader reader) {
+        int size = reader.readVarint();
+        List<Set<String>> parts = Lists.newArrayListWithCapacity(size);
+        for (int i = 0; i < size; i++) {
+            int subSize = reader.readVarint();
+            Set<String> subparts = Sets.newLinkedHashSetWithExpectedSize(subSize);
+            for (int j = 0; j < subSize; j++) {
+                subparts.add(reader.readString());
+            }
+            parts.add(subparts);
+        }
+        return new PartsPermission(parts);
+    }
+
+    /**
+     * 直接使用已解析部分创建的 WildcardPermission
+     */
+    private static final class PartsPermission extends WildcardPermission {
+        private static final long serialVersionUID = 1L;
+
+        private PartsPermission(List<Set<String>> parts) {
+            setParts(parts);
+        }
+    }
+}
@@ -1,62 +1,209 @@
 package ameba.security.shiro.cache;
 
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.shiro.cache.Cache;
 import org.apache.shiro.cache.CacheException;
+import org.apache.shiro.util.Destroyable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
+ * 进程内数据为并发 Map，有容量或过期配置时为 {@link StripedBoundedMap}。
+ * 容量已满时，访问频率不高于待淘汰 key 的新 key 不会被写入（TinyLFU 准入），put 不报错但之后 get 返回 null，
+ * 调用方需要按未命中处理。
+ * 修改共享读锁，默认在修改后同步写回，写回时持有写锁复制快照，保证写回的数据不包含修改了一半的状态；
+ * 等待写回的线程如果修改已包含在其他线程写回的快照中则直接返回。
+ * flushDelayMillis 大于 0 时改为由后台线程延迟合并写回，其他节点会延迟看到修改，进程崩溃时可能丢失修改。
+ * 销毁时同步写回尚未写回的修改。
+ *
  * @author icode
  */
-public class DefaultCache<K, V> implements Cache<K, V> {
+public class DefaultCache<K, V> implements Cache<K, V>, Destroyable {
 
-    private static final String CACHE_PRE_KEY = DefaultCache.class.getName() + ".";
+    static final String CACHE_PRE_KEY = DefaultCache.class.getName() + ".";
+    /**
+     * 默认同步写回
+     */
+    public static final long DEFAULT_FLUSH_DELAY_MILLIS = 0;
+    private static final Logger logger = LoggerFactory.getLogger(DefaultCache.class);
 
-    private String cacheName;
-    private Map<K, V> caches;
+    private final String cacheName;
+    private final CacheStore store;
+    private final Map<K, V> caches;
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private final Object flushLock = new Object();
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final long flushDelayMillis;
+    private long flushedVersion;
 
     public DefaultCache(String name) {
+        this(name, CacheSpec.UNBOUNDED);
+    }
+
+    public DefaultCache(String name, CacheSpec spec) {
+        this(name, spec, new AmebaCacheStore());
+    }
+
+    public DefaultCache(String name, CacheSpec spec, CacheStore store) {
+        this(name, spec, store, DEFAULT_FLUSH_DELAY_MILLIS);
+    }
+
+    /**
+     * @param name             缓存名称
+     * @param spec             容量与过期配置
+     * @param store            缓存后端
+     * @param flushDelayMillis 修改后延迟写回的时间（毫秒），期间的修改合并为一次写回，0 为同步写回
+     */
+    public DefaultCache(String name, CacheSpec spec, CacheStore store, long flushDelayMillis) {
         cacheName = CACHE_PRE_KEY + name;
-        caches = ameba.cache.Cache.get(cacheName);
-        if (caches == null) {
-            caches = Maps.newLinkedHashMap();
+        this.store = store;
+        this.flushDelayMillis = flushDelayMillis;
+        caches = spec.isBounded() ? new StripedBoundedMap<>(spec) : Maps.newConcurrentMap();
+        Map<K, V> stored = store.get(cacheName);
+        if (stored != null) {
+            for (Map.Entry<K, V> entry : stored.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    caches.put(entry.getKey(), entry.getValue());
+                }
+            }
         }
     }
 
     @Override
     public V get(K key) throws CacheException {
-        return caches.get(key);
+        return key == null ? null : caches.get(key);
     }
 
     @Override
     public V put(K key, V value) throws CacheException {
+        if (value == null) {
+            return remove(key);
+        }
+        snapshotLock.readLock().lock();
         try {
             return caches.put(key, value);
         } finally {
-            flush();
+            version.incrementAndGet();
+            snapshotLock.readLock().unlock();
+            flushAfterChange();
         }
     }
 
     @Override
     public V remove(K key) throws CacheException {
+        if (key == null) {
+            return null;
+        }
+        snapshotLock.readLock().lock();
         try {
             return caches.remove(key);
         } finally {
+            version.incrementAndGet();
+            snapshotLock.readLock().unlock();
+            flushAfterChange();
+        }
+    }
+
+    private void flushAfterChange() {
+        if (flushDelayMillis <= 0) {
             flush();
+        } else {
+            scheduleFlush();
         }
     }
 
-    protected void flush() {
-        ameba.cache.Cache.syncSet(cacheName, caches);
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            Flusher.EXECUTOR.schedule(this::flushQuietly, flushDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushQuietly() {
+        // 先清除标记，写回期间的修改会重新安排写回
+        flushScheduled.set(false);
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.warn("Flush cache [" + cacheName + "] failed", e);
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * 立即写回尚未写回的修改
+     */
+    public void flush() {
+        long target = version.get();
+        synchronized (flushLock) {
+            if (flushedVersion >= target) {
+                return;
+            }
+            Map<K, V> snapshot;
+            long snapshotVersion;
+            snapshotLock.writeLock().lock();
+            try {
+                snapshotVersion = version.get();
+                snapshot = copy();
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+            store.set(cacheName, snapshot);
+            flushedVersion = snapshotVersion;
+        }
+    }
+
+    /**
+     * @return 当前数据的一致快照
+     */
+    protected Map<K, V> snapshot() {
+        snapshotLock.writeLock().lock();
+        try {
+            return copy();
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    private Map<K, V> copy() {
+        if (caches instanceof StripedBoundedMap) {
+            Map<K, V> copy = Maps.newHashMapWithExpectedSize(caches.size());
+            ((StripedBoundedMap<K, V>) caches).copyTo(copy);
+            return copy;
+        }
+        return Maps.newHashMap(caches);
     }
 
     @Override
     public void clear() throws CacheException {
-        caches.clear();
-        ameba.cache.Cache.delete(cacheName);
+        synchronized (flushLock) {
+            snapshotLock.writeLock().lock();
+            try {
+                caches.clear();
+                flushedVersion = version.incrementAndGet();
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+            store.delete(cacheName);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        flush();
     }
 
     @Override
@@ -66,11 +213,22 @@ public class DefaultCache<K, V> implements Cache<K, V> {
 
     @Override
     public Set<K> keys() {
-        return caches.keySet();
+        return Collections.unmodifiableSet(caches.keySet());
     }
 
     @Override
     public Collection<V> values() {
-        return caches.values();
+        return Collections.unmodifiableCollection(caches.values());
+    }
+
+    /**
+     * 延迟写回的后台线程，只在使用延迟写回时创建
+     */
+    private static final class Flusher {
+        private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("shiro-cache-flush-%d")
+                        .setDaemon(true)
+                        .build());
     }
 }
@@ -1,16 +1,388 @@
 package ameba.security.shiro.cache;
 
+import com.google.common.collect.Maps;
 import org.apache.shiro.cache.Cache;
 import org.apache.shiro.cache.CacheException;
 import org.apache.shiro.cache.CacheManager;
+import org.apache.shiro.util.Destroyable;
+import org.apache.shiro.util.LifecycleUtils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * <pre>
+ * [main]
+ * cacheManager = ameba.security.shiro.cache.DefaultCacheManager
+ * # 进程内缓存的容量与过期配置，见 {@link CacheSpec}
+ * cacheManager.defaultSpec = maxEntries=10000;expireAfterWrite=30m
+ * cacheManager.specs = myRealm.authorizationCache:maxEntries=50000;expireAfterAccess=10m
+ * cacheManager.perEntry = true
+ * # 整体存储时修改后延迟写回的时间（毫秒），期间的修改合并为一次写回，默认 0 为同步写回
+ * cacheManager.flushDelayMillis = 0
+ * # 两级缓存，L2 总是逐条存储；L1 的容量、过期时间优先使用该缓存的 spec，
+ * # 未配置时使用 localMaxEntries、localExpireMillis（毫秒）；stalenessMillis 为不校验版本的时间窗口（毫秒）
+ * cacheManager.twoLevel = true
+ * cacheManager.localMaxEntries = 10000
+ * cacheManager.localExpireMillis = 60000
+ * cacheManager.stalenessMillis = 1000
+ * # 堆外存储（仅本进程可见），总大小、分片大小（字节）、堆内已解码对象数
+ * cacheManager.offHeap = true
+ * cacheManager.offHeapCapacity = 67108864
+ * cacheManager.offHeapSlabSize = 1048576
+ * cacheManager.offHeapDecodedEntries = 1000
+ * # 合并同一 key 的并发加载
+ * cacheManager.singleFlight = true
+ * # 延迟批量写入，写入间隔（毫秒）、触发写入的条目数、待写入条目上限
+ * cacheManager.writeBehind = true
+ * cacheManager.writeBehindIntervalMillis = 1000
+ * cacheManager.writeBehindBatchSize = 100
+ * cacheManager.writeBehindMaxPending = 10000
+ * securityManager.cacheManager = $cacheManager
+ * </pre>
+ *
  * @author icode
  */
-public class DefaultCacheManager implements CacheManager {
+public class DefaultCacheManager implements CacheManager, Destroyable {
+
+    private CacheSpec defaultSpec = CacheSpec.UNBOUNDED;
+    private Map<String, CacheSpec> specs = Maps.newHashMap();
+    private boolean perEntry;
+    private long flushDelayMillis = DefaultCache.DEFAULT_FLUSH_DELAY_MILLIS;
+    private final Set<DefaultCache<?, ?>> defaultCaches = Collections.synchronizedSet(
+            Collections.newSetFromMap(new WeakHashMap<>()));
+    private boolean twoLevel;
+    private long localMaxEntries = 10000;
+    private long localExpireMillis = 60000;
+    private long stalenessMillis = 1000;
+    private boolean singleFlight;
+    private final ConcurrentMap<String, SingleFlightCache<?, ?>> singleFlightCaches = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, Cache<?, ?>> negativeCaches = Maps.newConcurrentMap();
+    private boolean writeBehind;
+    private long writeBehindIntervalMillis = 1000;
+    private int writeBehindBatchSize = 100;
+    private int writeBehindMaxPending = 10000;
+    private boolean offHeap;
+    private long offHeapCapacity = 64L * 1024 * 1024;
+    private int offHeapSlabSize = 1024 * 1024;
+    private long offHeapDecodedEntries = 1000;
+    private CacheCodec codec = new CompactCacheCodec();
+    private CacheStore store;
+    private CacheStore effectiveStore;
+
+    public void setDefaultSpec(String defaultSpec) {
+        this.defaultSpec = CacheSpec.parse(defaultSpec);
+    }
+
+    /**
+     * @param specs 缓存名称与容量、过期配置
+     */
+    public void setSpecs(Map<String, String> specs) {
+        Map<String, CacheSpec> parsed = Maps.newHashMap();
+        if (specs != null) {
+            for (Map.Entry<String, String> entry : specs.entrySet()) {
+                parsed.put(entry.getKey().trim(), CacheSpec.parse(entry.getValue()));
+            }
+        }
+        this.specs = parsed;
+    }
+
+    public CacheSpec getSpec(String name) {
+        CacheSpec spec = specs.get(name);
+        return spec == null ? defaultSpec : spec;
+    }
+
+    public boolean isPerEntry() {
+        return perEntry;
+    }
+
+    /**
+     * @param perEntry 每个条目单独存储，不再在每次修改时整体写回缓存
+     */
+    public void setPerEntry(boolean perEntry) {
+        this.perEntry = perEntry;
+    }
+
+    public long getFlushDelayMillis() {
+        return flushDelayMillis;
+    }
+
+    /**
+     * @param flushDelayMillis 整体存储时修改后延迟写回的时间（毫秒），0 为同步写回，见 {@link DefaultCache}
+     */
+    public void setFlushDelayMillis(long flushDelayMillis) {
+        this.flushDelayMillis = flushDelayMillis;
+    }
+
+    public boolean isTwoLevel() {
+        return twoLevel;
+    }
+
+    /**
+     * @param twoLevel 在逐条存储前增加进程内缓存，见 {@link TwoLevelCache}；
+     *                 开启后总是逐条存储，L1 按 {@link #getSpec(String)} 设置容量与过期时间
+     */
+    public void setTwoLevel(boolean twoLevel) {
+        this.twoLevel = twoLevel;
+    }
+
+    public long getLocalMaxEntries() {
+        return localMaxEntries;
+    }
+
+    public void setLocalMaxEntries(long localMaxEntries) {
+        this.localMaxEntries = localMaxEntries;
+    }
+
+    public long getLocalExpireMillis() {
+        return localExpireMillis;
+    }
+
+    public void setLocalExpireMillis(long localExpireMillis) {
+        this.localExpireMillis = localExpireMillis;
+    }
+
+    public long getStalenessMillis() {
+        return stalenessMillis;
+    }
+
+    public void setStalenessMillis(long stalenessMillis) {
+        this.stalenessMillis = stalenessMillis;
+    }
+
+    public boolean isSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * @param singleFlight 返回 {@link SingleFlightCache}，同一 key 的并发未命中只加载一次
+     */
+    public void setSingleFlight(boolean singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
+    /**
+     * @return 所有缓存中等待其他线程加载结果、未重复加载的次数
+     */
+    public long getDeduplicatedLoadCount() {
+        long count = 0;
+        for (SingleFlightCache<?, ?> cache : singleFlightCaches.values()) {
+            count += cache.getDeduplicatedCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return 所有缓存中实际加载的次数
+     */
+    public long getLoadCount() {
+        long count = 0;
+        for (SingleFlightCache<?, ?> cache : singleFlightCaches.values()) {
+            count += cache.getLoadCount();
+        }
+        return count;
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * @param writeBehind 缓存修改延迟批量写入，见 {@link WriteBehindCacheStore}
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    public long getWriteBehindIntervalMillis() {
+        return writeBehindIntervalMillis;
+    }
+
+    public void setWriteBehindIntervalMillis(long writeBehindIntervalMillis) {
+        this.writeBehindIntervalMillis = writeBehindIntervalMillis;
+    }
+
+    public int getWriteBehindBatchSize() {
+        return writeBehindBatchSize;
+    }
+
+    public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+        this.writeBehindBatchSize = writeBehindBatchSize;
+    }
+
+    public int getWriteBehindMaxPending() {
+        return writeBehindMaxPending;
+    }
+
+    public void setWriteBehindMaxPending(int writeBehindMaxPending) {
+        this.writeBehindMaxPending = writeBehindMaxPending;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * @param offHeap 使用 {@link OffHeapCacheStore} 代替 store，建议同时开启 perEntry
+     */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    public long getOffHeapCapacity() {
+        return offHeapCapacity;
+    }
+
+    public void setOffHeapCapacity(long offHeapCapacity) {
+        this.offHeapCapacity = offHeapCapacity;
+    }
+
+    public int getOffHeapSlabSize() {
+        return offHeapSlabSize;
+    }
+
+    public void setOffHeapSlabSize(int offHeapSlabSize) {
+        this.offHeapSlabSize = offHeapSlabSize;
+    }
+
+    public long getOffHeapDecodedEntries() {
+        return offHeapDecodedEntries;
+    }
+
+    public void setOffHeapDecodedEntries(long offHeapDecodedEntries) {
+        this.offHeapDecodedEntries = offHeapDecodedEntries;
+    }
+
+    public CacheCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @param codec 缓存值的编解码，用于默认的 {@link AmebaCacheStore} 和堆外存储，默认为 {@link CompactCacheCodec}
+     */
+    public void setCodec(CacheCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * @return 实际使用的缓存后端，开启 offHeap、writeBehind 时为替换或包装后的后端
+     */
+    protected synchronized CacheStore getEffectiveStore() {
+        if (effectiveStore == null) {
+            CacheStore base = offHeap
+                    ? new OffHeapCacheStore(codec, offHeapCapacity, offHeapSlabSize, offHeapDecodedEntries)
+                    : getStore();
+            effectiveStore = writeBehind
+                    ? new WriteBehindCacheStore(base, writeBehindIntervalMillis,
+                    writeBehindBatchSize, writeBehindMaxPending)
+                    : base;
+        }
+        return effectiveStore;
+    }
+
+    /**
+     * @return 缓存后端，未设置时为使用 codec 编解码的 {@link AmebaCacheStore}
+     */
+    public synchronized CacheStore getStore() {
+        if (store == null) {
+            store = new AmebaCacheStore(codec);
+        }
+        return store;
+    }
+
+    public synchronized void setStore(CacheStore store) {
+        this.store = store;
+    }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <K, V> Cache<K, V> getCache(String name) throws CacheException {
-        return new DefaultCache<>(name);
+        if (!singleFlight) {
+            return createCache(name);
+        }
+        SingleFlightCache<?, ?> cache = singleFlightCaches.get(name);
+        if (cache == null) {
+            synchronized (singleFlightCaches) {
+                cache = singleFlightCaches.get(name);
+                if (cache == null) {
+                    cache = new SingleFlightCache<>(createCache(name));
+                    singleFlightCaches.put(name, cache);
+                }
+            }
+        }
+        return (Cache<K, V>) cache;
+    }
+
+    /**
+     * @param name 缓存名称
+     * @return 两级缓存 L1 的配置，spec 未配置的项使用 localMaxEntries、localExpireMillis
+     */
+    protected CacheSpec getLocalSpec(String name) {
+        CacheSpec spec = getSpec(name);
+        boolean expires = spec.getExpireAfterWriteMillis() > 0 || spec.getExpireAfterAccessMillis() > 0;
+        return new CacheSpec(
+                spec.getMaxEntries() > 0 ? spec.getMaxEntries() : localMaxEntries,
+                expires ? spec.getExpireAfterWriteMillis() : localExpireMillis,
+                spec.getExpireAfterAccessMillis());
+    }
+
+    protected <K, V> Cache<K, V> createCache(String name) {
+        CacheStore store = getEffectiveStore();
+        if (twoLevel) {
+            return new TwoLevelCache<>(name, store, getLocalSpec(name), stalenessMillis);
+        }
+        if (perEntry) {
+            return new PerEntryCache<>(name, store);
+        }
+        DefaultCache<K, V> cache = new DefaultCache<>(name, getSpec(name), store, flushDelayMillis);
+        defaultCaches.add(cache);
+        return cache;
+    }
+
+    /**
+     * 获取记录查询结果为空的缓存，只在本进程内有效，同名缓存只创建一次
+     *
+     * @param name       缓存名称
+     * @param maxEntries 最大条目数
+     * @param ttlMillis  条目写入后的存活时间（毫秒）
+     * @return 缓存
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> Cache<K, V> getNegativeCache(String name, long maxEntries, long ttlMillis) {
+        Cache<?, ?> cache = negativeCaches.get(name);
+        if (cache == null) {
+            synchronized (negativeCaches) {
+                cache = negativeCaches.get(name);
+                if (cache == null) {
+                    cache = new LocalCache<>(new CacheSpec(maxEntries, ttlMillis, 0));
+                    negativeCaches.put(name, cache);
+                }
+            }
+        }
+        return (Cache<K, V>) cache;
+    }
+
+    @Override
+    public synchronized void destroy() throws Exception {
+        // 先写回整体存储缓存中尚未写回的修改，再销毁后端
+        synchronized (defaultCaches) {
+            LifecycleUtils.destroy(defaultCaches);
+            defaultCaches.clear();
+        }
+        if (effectiveStore != store) {
+            LifecycleUtils.destroy(effectiveStore);
+            if (effectiveStore instanceof WriteBehindCacheStore) {
+                CacheStore base = ((WriteBehindCacheStore) effectiveStore).getDelegate();
+                if (base != store) {
+                    LifecycleUtils.destroy(base);
+                }
+            }
+        }
+        effectiveStore = null;
+        singleFlightCaches.clear();
+        negativeCaches.clear();
     }
 }
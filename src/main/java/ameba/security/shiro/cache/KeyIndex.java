@@ -0,0 +1,188 @@
+package ameba.security.shiro.cache;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.shiro.cache.CacheException;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 逐条存储缓存的 key 索引
+ * <br>
+ * key 按 hash 分到 buckets 个集合中，保存在 base#keys:序号 下。
+ * 已存在的 key 新增、不存在的 key 删除只读取一次所在集合；需要修改时通过 {@link CacheStore#add} 获取该集合的锁
+ * （带存活时间，持有节点异常退出后自动释放），重新读取、修改、写回后释放，只写入一个集合，
+ * 写入量约为索引大小的 1/buckets。各节点直接读写共享的集合。
+ * 旧版本整体保存在 base#keys 的索引在首次使用时合并到各集合。
+ *
+ * @author icode
+ */
+class KeyIndex<K> {
+    static final int DEFAULT_BUCKETS = 64;
+    private static final long LOCK_TTL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final long LOCK_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final String base;
+    private final CacheStore store;
+    private final int buckets;
+    private volatile boolean migrated;
+
+    KeyIndex(String base, CacheStore store, int buckets) {
+        this.base = base;
+        this.store = store;
+        this.buckets = Math.max(buckets, 1);
+    }
+
+    private String bucketKey(int bucket) {
+        return base + "#keys:" + bucket;
+    }
+
+    private int bucketOf(Object key) {
+        int h = key.hashCode();
+        return ((h ^ (h >>> 16)) & 0x7fffffff) % buckets;
+    }
+
+    /**
+     * 兼容旧版整体存储的索引
+     */
+    private String legacyKey() {
+        return base + "#keys";
+    }
+
+    void add(K key) {
+        migrate();
+        int bucket = bucketOf(key);
+        Set<K> current = store.get(bucketKey(bucket));
+        if (current != null && current.contains(key)) {
+            return;
+        }
+        update(bucket, Lists.newArrayList(key), true);
+    }
+
+    void remove(K key) {
+        migrate();
+        int bucket = bucketOf(key);
+        Set<K> current = store.get(bucketKey(bucket));
+        if (current == null || !current.contains(key)) {
+            return;
+        }
+        update(bucket, Lists.newArrayList(key), false);
+    }
+
+    /**
+     * 删除全部 key 的索引
+     *
+     * @param keys 要删除的 key
+     */
+    void removeAll(Collection<K> keys) {
+        migrate();
+        for (Map.Entry<Integer, List<K>> entry : group(keys).entrySet()) {
+            update(entry.getKey(), entry.getValue(), false);
+        }
+    }
+
+    int size() {
+        migrate();
+        int size = 0;
+        for (int i = 0; i < buckets; i++) {
+            Set<K> keys = store.get(bucketKey(i));
+            if (keys != null) {
+                size += keys.size();
+            }
+        }
+        return size;
+    }
+
+    Set<K> keys() {
+        migrate();
+        ImmutableSet.Builder<K> all = ImmutableSet.builder();
+        for (int i = 0; i < buckets; i++) {
+            Set<K> keys = store.get(bucketKey(i));
+            if (keys != null) {
+                all.addAll(keys);
+            }
+        }
+        return all.build();
+    }
+
+    private Map<Integer, List<K>> group(Collection<K> keys) {
+        Map<Integer, List<K>> grouped = Maps.newHashMap();
+        for (K key : keys) {
+            grouped.computeIfAbsent(bucketOf(key), b -> Lists.newArrayList()).add(key);
+        }
+        return grouped;
+    }
+
+    private void migrate() {
+        if (migrated) {
+            return;
+        }
+        synchronized (this) {
+            if (migrated) {
+                return;
+            }
+            Set<K> legacy = store.get(legacyKey());
+            if (legacy != null) {
+                for (Map.Entry<Integer, List<K>> entry : group(legacy).entrySet()) {
+                    update(entry.getKey(), entry.getValue(), true);
+                }
+                store.delete(legacyKey());
+            }
+            migrated = true;
+        }
+    }
+
+    private void update(int bucket, Collection<K> keys, boolean add) {
+        String bucketKey = bucketKey(bucket);
+        String lockKey = bucketKey + "#lock";
+        String token = lock(lockKey);
+        try {
+            Set<K> current = store.get(bucketKey);
+            Set<K> updated = current == null ? Sets.newHashSet() : Sets.newHashSet(current);
+            boolean changed = add ? updated.addAll(keys) : updated.removeAll(keys);
+            if (!changed) {
+                return;
+            }
+            if (updated.isEmpty()) {
+                store.delete(bucketKey);
+            } else {
+                store.set(bucketKey, updated);
+            }
+        } finally {
+            unlock(lockKey, token);
+        }
+    }
+
+    private String lock(String lockKey) {
+        String token = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis() + LOCK_WAIT_MILLIS;
+        long backoff = 1;
+        while (!store.add(lockKey, token, LOCK_TTL_MILLIS)) {
+            if (System.currentTimeMillis() >= deadline) {
+                throw new CacheException("Timed out waiting for cache key index lock " + lockKey);
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CacheException("Interrupted waiting for cache key index lock " + lockKey, e);
+            }
+            backoff = Math.min(backoff * 2, 20);
+        }
+        return token;
+    }
+
+    private void unlock(String lockKey, String token) {
+        // 只释放自己持有的锁，锁已过期并被其他节点获取时不删除
+        if (token.equals(store.get(lockKey))) {
+            store.delete(lockKey);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ameba.security.shiro.cache;
+
+import org.apache.shiro.cache.Cache;
+import org.apache.shiro.cache.CacheException;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 缓存未命中时可自动加载的缓存
+ *
+ * @author icode
+ */
+public interface LoadingCache<K, V> extends Cache<K, V> {
+
+    /**
+     * 获取缓存，未命中时调用 loader 加载并放入缓存，loader 返回 null 时不放入缓存
+     *
+     * @param key    缓存 key
+     * @param loader 加载器
+     * @return 缓存值
+     * @throws CacheException loader 抛出受检异常时
+     */
+    V get(K key, Callable<? extends V> loader) throws CacheException;
+}
@@ -0,0 +1,58 @@
+package ameba.security.shiro.cache;
+
+import org.apache.shiro.cache.Cache;
+import org.apache.shiro.cache.CacheException;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * 只在本进程内有效的有界缓存
+ * <br>
+ * 容量已满时访问频率过低的新 key 不会被写入，见 {@link BoundedMap}。
+ *
+ * @author icode
+ */
+public class LocalCache<K, V> implements Cache<K, V> {
+
+    private final StripedBoundedMap<K, V> data;
+
+    public LocalCache(CacheSpec spec) {
+        this.data = new StripedBoundedMap<>(spec);
+    }
+
+    @Override
+    public V get(K key) throws CacheException {
+        return data.get(key);
+    }
+
+    @Override
+    public V put(K key, V value) throws CacheException {
+        return data.put(key, value);
+    }
+
+    @Override
+    public V remove(K key) throws CacheException {
+        return data.remove(key);
+    }
+
+    @Override
+    public void clear() throws CacheException {
+        data.clear();
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public Set<K> keys() {
+        return data.keySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        return data.values();
+    }
+}
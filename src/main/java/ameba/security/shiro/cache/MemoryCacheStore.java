@@ -0,0 +1,48 @@
+package ameba.security.shiro.cache;
+
+import com.google.common.collect.Maps;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 进程内缓存后端，用于单节点部署或测试时代替共享缓存
+ *
+ * @author icode
+ */
+public class MemoryCacheStore implements CacheStore {
+
+    private final ConcurrentMap<String, Object> data = Maps.newConcurrentMap();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V> V get(String key) {
+        return (V) data.get(key);
+    }
+
+    @Override
+    public void set(String key, Object value) {
+        if (value == null) {
+            data.remove(key);
+        } else {
+            data.put(key, value);
+        }
+    }
+
+    @Override
+    public boolean add(String key, Object value, long ttlMillis) {
+        return data.putIfAbsent(key, value) == null;
+    }
+
+    @Override
+    public void delete(String key) {
+        data.remove(key);
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public void clear() {
+        data.clear();
+    }
+}
@@ -0,0 +1,291 @@
+package ameba.security.shiro.cache;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.shiro.util.Destroyable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 堆外内存缓存后端
+ * <br>
+ * 值经 {@link CacheCodec} 编码后顺序写入固定大小的 direct ByteBuffer 分片，
+ * 分片数达到上限时淘汰最早的分片及其中的全部条目，被覆盖或删除的条目空间随分片淘汰回收。
+ * 超过分片大小的条目单独分配刚好大小的 direct ByteBuffer，与分片共用总大小，超出总大小时同样淘汰最早的分片。
+ * 读取时才解码，最近解码的对象保存在有界的堆内缓存中。仅在本进程内可见。
+ *
+ * @author icode
+ */
+public class OffHeapCacheStore implements CacheStore, Destroyable {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapCacheStore.class);
+
+    private final CacheCodec codec;
+    private final long capacity;
+    private final int slabSize;
+    private final int maxSlabs;
+    private final Map<String, Location> index = Maps.newHashMap();
+    private final Deque<Slab> slabs = new ArrayDeque<>();
+    private final BoundedMap<String, Object> decoded;
+    private Slab current;
+    private final Set<String> oversizeWarned = Sets.newHashSet();
+    private long oversizeBytes;
+    private long bytesUsed;
+    private long writeCount;
+    private long evictionCount;
+
+    /**
+     * @param codec          编解码
+     * @param capacity       堆外内存总大小（字节）
+     * @param slabSize       分片大小（字节），超过分片大小的条目单独分配
+     * @param decodedEntries 堆内保存的已解码对象数
+     */
+    public OffHeapCacheStore(CacheCodec codec, long capacity, int slabSize, long decodedEntries) {
+        if (slabSize <= 0 || capacity < slabSize) {
+            throw new IllegalArgumentException("Off heap capacity must be at least one slab: "
+                    + capacity + " < " + slabSize);
+        }
+        this.codec = codec;
+        this.capacity = capacity;
+        this.slabSize = slabSize;
+        this.maxSlabs = (int) Math.min(Integer.MAX_VALUE, capacity / slabSize);
+        this.decoded = new BoundedMap<>(new CacheSpec(Math.max(decodedEntries, 1), 0, 0));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V> V get(String key) {
+        Object value = decoded.get(key);
+        if (value != null) {
+            return (V) value;
+        }
+        byte[] bytes;
+        Location location;
+        synchronized (this) {
+            location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            bytes = new byte[location.length];
+            ByteBuffer buffer = location.slab.buffer.duplicate();
+            buffer.position(location.offset);
+            buffer.get(bytes);
+        }
+        value = codec.decode(bytes);
+        synchronized (this) {
+            // 解码期间可能已被修改
+            if (index.get(key) == location) {
+                decoded.put(key, value);
+            }
+        }
+        return (V) value;
+    }
+
+    @Override
+    public void set(String key, Object value) {
+        if (value == null) {
+            delete(key);
+            return;
+        }
+        byte[] bytes = codec.encode(value);
+        synchronized (this) {
+            decoded.remove(key);
+            remove(key);
+            writeCount++;
+            if (bytes.length > slabSize) {
+                setOversize(key, bytes);
+                return;
+            }
+            if (current == null || current.buffer.remaining() < bytes.length) {
+                current = allocate();
+            }
+            Location location = new Location(key, current, current.buffer.position(), bytes.length);
+            current.buffer.put(bytes);
+            current.locations.add(location);
+            index.put(key, location);
+            bytesUsed += bytes.length;
+        }
+    }
+
+    /**
+     * 超过分片大小的条目写入单独的 buffer，不放入分片队列
+     */
+    private void setOversize(String key, byte[] bytes) {
+        if (bytes.length > capacity) {
+            logger.warn("Off heap cache entry [{}] of {} bytes exceeds capacity {}, not cached",
+                    key, bytes.length, capacity);
+            evictionCount++;
+            return;
+        }
+        if (oversizeWarned.add(key)) {
+            logger.warn("Off heap cache entry [{}] of {} bytes exceeds slab size {}, stored in a dedicated buffer; "
+                    + "consider a larger offHeapSlabSize or perEntry storage", key, bytes.length, slabSize);
+        }
+        while (!slabs.isEmpty() && allocated() + bytes.length > capacity) {
+            evictOldest();
+        }
+        if (allocated() + bytes.length > capacity) {
+            // 只剩单独分配的条目，淘汰其中部分条目
+            evictOversize(allocated() + bytes.length - capacity);
+        }
+        Slab slab = new Slab(ByteBuffer.allocateDirect(bytes.length));
+        slab.buffer.put(bytes);
+        Location location = new Location(key, slab, 0, bytes.length);
+        index.put(key, location);
+        bytesUsed += bytes.length;
+        oversizeBytes += bytes.length;
+    }
+
+    private void evictOversize(long bytes) {
+        List<Location> oversize = Lists.newArrayList();
+        for (Location location : index.values()) {
+            if (location.slab.buffer.capacity() > slabSize) {
+                oversize.add(location);
+            }
+        }
+        for (Location location : oversize) {
+            if (bytes <= 0) {
+                break;
+            }
+            remove(location.key);
+            decoded.remove(location.key);
+            evictionCount++;
+            bytes -= location.length;
+        }
+    }
+
+    @Override
+    public synchronized boolean add(String key, Object value, long ttlMillis) {
+        if (index.containsKey(key)) {
+            return false;
+        }
+        set(key, value);
+        return true;
+    }
+
+    @Override
+    public synchronized void delete(String key) {
+        decoded.remove(key);
+        remove(key);
+    }
+
+    private void remove(String key) {
+        Location location = index.remove(key);
+        if (location != null) {
+            bytesUsed -= location.length;
+            if (location.slab.buffer.capacity() > slabSize) {
+                oversizeBytes -= location.length;
+            }
+        }
+    }
+
+    private long allocated() {
+        return (long) slabs.size() * slabSize + oversizeBytes;
+    }
+
+    private Slab evictOldest() {
+        Slab oldest = slabs.pollFirst();
+        for (Location location : oldest.locations) {
+            // 只移除仍指向该分片的条目
+            if (index.get(location.key) == location) {
+                index.remove(location.key);
+                decoded.remove(location.key);
+                bytesUsed -= location.length;
+                evictionCount++;
+            }
+        }
+        if (oldest == current) {
+            current = null;
+        }
+        return oldest;
+    }
+
+    private Slab allocate() {
+        ByteBuffer buffer = null;
+        while (!slabs.isEmpty() && (slabs.size() >= maxSlabs || allocated() + slabSize > capacity)) {
+            buffer = evictOldest().buffer;
+        }
+        if (allocated() + slabSize > capacity) {
+            evictOversize(allocated() + slabSize - capacity);
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(slabSize);
+        } else {
+            buffer.clear();
+        }
+        Slab slab = new Slab(buffer);
+        slabs.addLast(slab);
+        return slab;
+    }
+
+    /**
+     * @return 有效条目占用的堆外字节数
+     */
+    public synchronized long getBytesUsed() {
+        return bytesUsed;
+    }
+
+    /**
+     * @return 已分配的堆外字节数
+     */
+    public synchronized long getBytesAllocated() {
+        return allocated();
+    }
+
+    public synchronized int getEntryCount() {
+        return index.size();
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return 被淘汰的条目占写入次数的比例
+     */
+    public synchronized double getEvictionRate() {
+        return writeCount == 0 ? 0 : (double) evictionCount / writeCount;
+    }
+
+    @Override
+    public synchronized void destroy() throws Exception {
+        index.clear();
+        slabs.clear();
+        decoded.clear();
+        oversizeWarned.clear();
+        current = null;
+        bytesUsed = 0;
+        oversizeBytes = 0;
+    }
+
+    private static final class Slab {
+        private final ByteBuffer buffer;
+        private final List<Location> locations = Lists.newArrayList();
+
+        private Slab(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Location {
+        private final String key;
+        private final Slab slab;
+        private final int offset;
+        private final int length;
+
+        private Location(String key, Slab slab, int offset, int length) {
+            this.key = key;
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ameba.security.shiro.cache;
+
+import com.google.common.collect.Lists;
+import org.apache.shiro.cache.Cache;
+import org.apache.shiro.cache.CacheException;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 逐条存储的缓存
+ * <br>
+ * 每个条目单独存储在 cacheName:key 下，get/put/remove 只读写一个条目；
+ * key 索引由 {@link KeyIndex} 分成多个集合保存，已存在的 key 只读取所在集合，新增、删除 key 时加锁修改一个集合；
+ * 索引总是直接读写 {@link WriteBehindCacheStore} 的 delegate，不延迟写入。
+ * put/remove 不读取旧值，始终返回 null。
+ *
+ * @author icode
+ */
+public class PerEntryCache<K, V> implements Cache<K, V> {
+
+    private final String cacheName;
+    private final CacheStore store;
+    private final KeyIndex<K> keys;
+
+    public PerEntryCache(String name, CacheStore store) {
+        this(name, store, KeyIndex.DEFAULT_BUCKETS);
+    }
+
+    /**
+     * @param name         缓存名称
+     * @param store        缓存后端
+     * @param indexBuckets key 索引分成的集合数
+     */
+    public PerEntryCache(String name, CacheStore store, int indexBuckets) {
+        this.cacheName = DefaultCache.CACHE_PRE_KEY + name;
+        this.store = store;
+        // 延迟写入时其他节点读到旧的集合会覆盖本节点的修改
+        CacheStore indexStore = store instanceof WriteBehindCacheStore
+                ? ((WriteBehindCacheStore) store).getDelegate()
+                : store;
+        this.keys = new KeyIndex<>(cacheName, indexStore, indexBuckets);
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    protected CacheStore getStore() {
+        return store;
+    }
+
+    protected String entryKey(K key) {
+        return cacheName + ":" + key;
+    }
+
+    @Override
+    public V get(K key) throws CacheException {
+        if (key == null) {
+            return null;
+        }
+        CacheEntry<K, V> entry = store.get(entryKey(key));
+        return entry != null && Objects.equals(entry.getKey(), key) ? entry.getValue() : null;
+    }
+
+    /**
+     * @return 始终返回 null，不为返回旧值额外读取
+     */
+    @Override
+    public V put(K key, V value) throws CacheException {
+        store.set(entryKey(key), new CacheEntry<>(key, value));
+        keys.add(key);
+        return null;
+    }
+
+    /**
+     * @return 始终返回 null，不为返回旧值额外读取
+     */
+    @Override
+    public V remove(K key) throws CacheException {
+        store.delete(entryKey(key));
+        keys.remove(key);
+        return null;
+    }
+
+    @Override
+    public void clear() throws CacheException {
+        Set<K> current = keys.keys();
+        for (K key : current) {
+            store.delete(entryKey(key));
+        }
+        keys.removeAll(current);
+    }
+
+    @Override
+    public int size() {
+        return keys.size();
+    }
+
+    @Override
+    public Set<K> keys() {
+        return keys.keys();
+    }
+
+    @Override
+    public Collection<V> values() {
+        Set<K> current = keys();
+        List<V> values = Lists.newArrayListWithCapacity(current.size());
+        for (K key : current) {
+            V value = get(key);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return Collections.unmodifiableList(values);
+    }
+}
@@ -0,0 +1,38 @@
+package ameba.security.shiro.cache;
+
+import org.apache.shiro.cache.CacheException;
+import org.apache.shiro.io.ClassResolvingObjectInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * 使用 Java 序列化的编解码
+ *
+ * @author icode
+ */
+public class SerializationCodec implements CacheCodec {
+
+    @Override
+    public byte[] encode(Object value) throws CacheException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            throw new CacheException("Unable to serialize cache value: " + value.getClass().getName(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] bytes) throws CacheException {
+        try (ObjectInputStream in = new ClassResolvingObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new CacheException("Unable to deserialize cache value", e);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package ameba.security.shiro.cache;
+
+import com.google.common.collect.Maps;
+import org.apache.shiro.cache.Cache;
+import org.apache.shiro.cache.CacheException;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 合并并发加载的缓存
+ * <br>
+ * 同一 key 同时未命中时只有一个线程调用 loader，其他线程等待同一个加载结果。
+ * 加载期间发生 remove/clear 时，加载结果只返回给本次调用的线程，不写入缓存，之后的调用重新加载，
+ * 避免撤销授权前读取的旧数据被重新缓存。
+ *
+ * @author icode
+ */
+public class SingleFlightCache<K, V> implements LoadingCache<K, V> {
+
+    private final Cache<K, V> delegate;
+    private final ConcurrentMap<K, CompletableFuture<V>> loading = Maps.newConcurrentMap();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder deduplicatedCount = new LongAdder();
+    /**
+     * remove/clear 时递增
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public SingleFlightCache(Cache<K, V> delegate) {
+        this.delegate = delegate;
+    }
+
+    public Cache<K, V> getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public V get(K key, Callable<? extends V> loader) throws CacheException {
+        V value = delegate.get(key);
+        if (value != null) {
+            return value;
+        }
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            deduplicatedCount.increment();
+            return await(existing);
+        }
+        try {
+            long generation = invalidations.get();
+            value = delegate.get(key);
+            if (value == null) {
+                loadCount.increment();
+                value = loader.call();
+                if (value != null && invalidations.get() == generation) {
+                    delegate.put(key, value);
+                    // 写入前的检查与写入之间发生的失效
+                    if (invalidations.get() != generation) {
+                        delegate.remove(key);
+                    }
+                }
+            }
+            future.complete(value);
+            return value;
+        } catch (Exception e) {
+            loadFailureCount.increment();
+            future.completeExceptionally(e);
+            throw e instanceof RuntimeException ? (RuntimeException) e : new CacheException(e);
+        } catch (Error e) {
+            loadFailureCount.increment();
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    private V await(CompletableFuture<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CacheException(cause);
+        }
+    }
+
+    /**
+     * @return 实际调用 loader 的次数
+     */
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount.sum();
+    }
+
+    /**
+     * @return 等待其他线程加载结果、未调用 loader 的次数
+     */
+    public long getDeduplicatedCount() {
+        return deduplicatedCount.sum();
+    }
+
+    @Override
+    public V get(K key) throws CacheException {
+        return delegate.get(key);
+    }
+
+    @Override
+    public V put(K key, V value) throws CacheException {
+        return delegate.put(key, value);
+    }
+
+    @Override
+    public V remove(K key) throws CacheException {
+        invalidations.incrementAndGet();
+        loading.remove(key);
+        return delegate.remove(key);
+    }
+
+    @Override
+    public void clear() throws CacheException {
+        invalidations.incrementAndGet();
+        loading.clear();
+        delegate.clear();
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public Set<K> keys() {
+        return delegate.keys();
+    }
+
+    @Override
+    public Collection<V> values() {
+        return delegate.values();
+    }
+}
@@ -0,0 +1,158 @@
+package ameba.security.shiro.cache;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 分段加锁的 {@link BoundedMap}
+ * <br>
+ * key 按 hash 分到各段，每段独立加锁、独立淘汰，容量平均分配到各段。
+ *
+ * @author icode
+ */
+public class StripedBoundedMap<K, V> extends AbstractMap<K, V> {
+
+    /**
+     * 每段至少容纳的条目数，容量较小时减少段数以保证淘汰精度
+     */
+    private static final long MIN_SEGMENT_ENTRIES = 64;
+    private static final int MAX_SEGMENTS = 16;
+
+    private final CacheSpec spec;
+    private final BoundedMap<K, V>[] segments;
+    private final int segmentMask;
+
+    @SuppressWarnings("unchecked")
+    public StripedBoundedMap(CacheSpec spec) {
+        this.spec = spec;
+        int count = MAX_SEGMENTS;
+        if (spec.getMaxEntries() > 0) {
+            while (count > 1 && spec.getMaxEntries() / count < MIN_SEGMENT_ENTRIES) {
+                count >>= 1;
+            }
+        }
+        CacheSpec segmentSpec = new CacheSpec(
+                spec.getMaxEntries() > 0 ? (spec.getMaxEntries() + count - 1) / count : 0,
+                spec.getExpireAfterWriteMillis(),
+                spec.getExpireAfterAccessMillis());
+        segments = new BoundedMap[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new BoundedMap<>(segmentSpec);
+        }
+        segmentMask = count - 1;
+    }
+
+    public CacheSpec getSpec() {
+        return spec;
+    }
+
+    int getSegmentCount() {
+        return segments.length;
+    }
+
+    private BoundedMap<K, V> segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & segmentMask];
+    }
+
+    @Override
+    public V get(Object key) {
+        return key == null ? null : segmentFor(key).get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return segmentFor(key).put(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key == null ? null : segmentFor(key).remove(key);
+    }
+
+    @Override
+    public void clear() {
+        for (BoundedMap<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (BoundedMap<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public void cleanUp() {
+        for (BoundedMap<K, V> segment : segments) {
+            segment.cleanUp();
+        }
+    }
+
+    public long getEvictionCount() {
+        long count = 0;
+        for (BoundedMap<K, V> segment : segments) {
+            count += segment.getEvictionCount();
+        }
+        return count;
+    }
+
+    public long getRejectionCount() {
+        long count = 0;
+        for (BoundedMap<K, V> segment : segments) {
+            count += segment.getRejectionCount();
+        }
+        return count;
+    }
+
+    /**
+     * 将未过期的条目复制到 target
+     */
+    public void copyTo(Map<? super K, ? super V> target) {
+        for (BoundedMap<K, V> segment : segments) {
+            segment.copyTo(target);
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Map<K, V> snapshot = Maps.newLinkedHashMap();
+        copyTo(snapshot);
+        return Collections.unmodifiableMap(snapshot).entrySet();
+    }
+
+    @Override
+    public Set<K> keySet() {
+        Set<K> keys = Sets.newLinkedHashSet();
+        for (BoundedMap<K, V> segment : segments) {
+            keys.addAll(segment.keySet());
+        }
+        return Collections.unmodifiableSet(keys);
+    }
+
+    @Override
+    public Collection<V> values() {
+        List<V> values = Lists.newArrayList();
+        for (BoundedMap<K, V> segment : segments) {
+            values.addAll(segment.values());
+        }
+        return Collections.unmodifiableList(values);
+    }
+}
@@ -0,0 +1,127 @@
+package ameba.security.shiro.cache;
+
+import org.apache.shiro.cache.CacheException;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 两级缓存
+ * <br>
+ * L1 为进程内的 {@link StripedBoundedMap}，L2 为共享的 {@link CacheStore}。
+ * 每次写入在 cacheName:key@v 下记录新的版本号，L1 命中且距上次校验不超过 staleness 时直接返回，
+ * 超过后只读取版本号，版本一致时继续使用 L1，否则重新从 L2 读取。
+ *
+ * @author icode
+ */
+public class TwoLevelCache<K, V> extends PerEntryCache<K, V> {
+
+    private static final String VERSION_SUFFIX = "@v";
+
+    private final StripedBoundedMap<K, Local<V>> local;
+    private final long stalenessMillis;
+
+    /**
+     * @param name              缓存名称
+     * @param store             L2 缓存后端
+     * @param localMaxEntries   L1 最大条目数
+     * @param localExpireMillis L1 条目写入后的存活时间
+     * @param stalenessMillis   L1 命中后不校验版本的时间窗口
+     */
+    public TwoLevelCache(String name, CacheStore store, long localMaxEntries,
+                         long localExpireMillis, long stalenessMillis) {
+        this(name, store, new CacheSpec(localMaxEntries, localExpireMillis, 0), stalenessMillis);
+    }
+
+    /**
+     * @param name            缓存名称
+     * @param store           L2 缓存后端
+     * @param localSpec       L1 的容量与过期配置
+     * @param stalenessMillis L1 命中后不校验版本的时间窗口
+     */
+    public TwoLevelCache(String name, CacheStore store, CacheSpec localSpec, long stalenessMillis) {
+        super(name, store);
+        this.local = new StripedBoundedMap<>(localSpec);
+        this.stalenessMillis = stalenessMillis;
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    protected String versionKey(K key) {
+        return entryKey(key) + VERSION_SUFFIX;
+    }
+
+    @Override
+    public V get(K key) throws CacheException {
+        if (key == null) {
+            return null;
+        }
+        long now = now();
+        Local<V> hit = local.get(key);
+        if (hit != null) {
+            if (now - hit.checkedAt < stalenessMillis) {
+                return hit.value;
+            }
+            Long version = getStore().get(versionKey(key));
+            if (Objects.equals(version, hit.version)) {
+                hit.checkedAt = now;
+                return hit.value;
+            }
+        }
+        Long version = getStore().get(versionKey(key));
+        V value = super.get(key);
+        if (value == null) {
+            local.remove(key);
+        } else {
+            local.put(key, new Local<>(value, version, now));
+        }
+        return value;
+    }
+
+    @Override
+    public V put(K key, V value) throws CacheException {
+        Long version = ThreadLocalRandom.current().nextLong();
+        local.remove(key);
+        V previous = super.put(key, value);
+        getStore().set(versionKey(key), version);
+        local.put(key, new Local<>(value, version, now()));
+        return previous;
+    }
+
+    @Override
+    public V remove(K key) throws CacheException {
+        local.remove(key);
+        try {
+            return super.remove(key);
+        } finally {
+            getStore().delete(versionKey(key));
+        }
+    }
+
+    @Override
+    public void clear() throws CacheException {
+        local.clear();
+        for (K key : keys()) {
+            getStore().delete(versionKey(key));
+        }
+        super.clear();
+    }
+
+    public long getLocalSize() {
+        return local.size();
+    }
+
+    private static final class Local<V> {
+        private final V value;
+        private final Long version;
+        private volatile long checkedAt;
+
+        private Local(V value, Long version, long checkedAt) {
+            this.value = value;
+            this.version = version;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package ameba.security.shiro.cache;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.shiro.util.Destroyable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 延迟批量写入的缓存后端
+ * <br>
+ * set/delete 先放入待写入队列，同一 key 的多次修改合并为最后一次，
+ * 由后台线程按时间间隔或队列达到 batchSize 时批量写入 delegate；
+ * 队列达到 maxPending 时由调用线程同步写入。读取优先返回尚未写入的修改。
+ * destroy 时写入全部剩余修改。
+ *
+ * @author icode
+ */
+public class WriteBehindCacheStore implements CacheStore, Destroyable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindCacheStore.class);
+    private static final Object DELETED = new Object();
+
+    private final CacheStore delegate;
+    private final int batchSize;
+    private final int maxPending;
+    private final Object lock = new Object();
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService executor;
+    private Map<String, Object> pending = Maps.newLinkedHashMap();
+    /**
+     * 正在写入 delegate 的修改，写入完成前读取仍然可见
+     */
+    private volatile Map<String, Object> flushing = Maps.newHashMap();
+    private volatile boolean flushScheduled;
+
+    public WriteBehindCacheStore(CacheStore delegate, long flushIntervalMillis, int batchSize, int maxPending) {
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("shiro-cache-write-behind-%d")
+                .setDaemon(true)
+                .build());
+        this.executor.scheduleWithFixedDelay(this::flushQuietly,
+                flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public CacheStore getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V> V get(String key) {
+        Object value;
+        synchronized (lock) {
+            value = pending.get(key);
+        }
+        if (value == null) {
+            value = flushing.get(key);
+        }
+        if (value == null) {
+            return delegate.get(key);
+        }
+        return value == DELETED ? null : (V) value;
+    }
+
+    @Override
+    public void set(String key, Object value) {
+        enqueue(key, value == null ? DELETED : value);
+    }
+
+    @Override
+    public void delete(String key) {
+        enqueue(key, DELETED);
+    }
+
+    /**
+     * 直接写入 delegate，不进入队列；尚未写入的删除先同步执行
+     */
+    @Override
+    public boolean add(String key, Object value, long ttlMillis) {
+        synchronized (lock) {
+            Object pendingValue = pending.get(key);
+            if (pendingValue != null && pendingValue != DELETED) {
+                return false;
+            }
+            if (pendingValue == DELETED) {
+                pending.remove(key);
+                delegate.delete(key);
+            }
+        }
+        return delegate.add(key, value, ttlMillis);
+    }
+
+    private void enqueue(String key, Object value) {
+        int size;
+        synchronized (lock) {
+            pending.put(key, value);
+            size = pending.size();
+        }
+        if (size >= maxPending) {
+            flush();
+        } else if (size >= batchSize && !flushScheduled) {
+            flushScheduled = true;
+            executor.execute(this::flushQuietly);
+        }
+    }
+
+    public int getPendingSize() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Throwable e) {
+            logger.error("Write behind cache flush failed", e);
+        }
+    }
+
+    /**
+     * 写入全部待写入的修改
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<String, Object> batch;
+            synchronized (lock) {
+                flushScheduled = false;
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                flushing = batch;
+                pending = Maps.newLinkedHashMap();
+            }
+            try {
+                for (Map.Entry<String, Object> entry : batch.entrySet()) {
+                    if (entry.getValue() == DELETED) {
+                        delegate.delete(entry.getKey());
+                    } else {
+                        delegate.set(entry.getKey(), entry.getValue());
+                    }
+                }
+            } catch (RuntimeException e) {
+                // 未写入成功的修改放回队列，已有更新的 key 以新修改为准
+                synchronized (lock) {
+                    for (Map.Entry<String, Object> entry : batch.entrySet()) {
+                        pending.putIfAbsent(entry.getKey(), entry.getValue());
+                    }
+                }
+                throw e;
+            } finally {
+                flushing = Maps.newHashMap();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } finally {
+            flush();
+        }
+    }
+}
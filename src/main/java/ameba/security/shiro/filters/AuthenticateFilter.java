@@ -3,6 +3,7 @@ package ameba.security.shiro.filters;
 import ameba.core.Application;
 import ameba.security.shiro.util.FilterUtil;
 import ameba.security.shiro.util.URIMatcher;
+import ameba.security.shiro.util.URIMatcherIndex;
 import com.google.common.base.Charsets;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.shiro.subject.Subject;
@@ -23,6 +24,7 @@ import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -36,6 +38,9 @@ public class AuthenticateFilter implements ContainerRequestFilter {
 
     protected Set<URIMatcher> ignoreUris;
     protected Set<URIMatcher> uris;
+    protected URIMatcherIndex ignoreUrisIndex;
+    protected URIMatcherIndex globalIgnoreUrisIndex;
+    protected URIMatcherIndex urisIndex;
     private String loginUrl = "/login";
     private String callbackParam = "callback";
     @Context
@@ -51,11 +56,22 @@ public class AuthenticateFilter implements ContainerRequestFilter {
         if (StringUtils.isNotBlank(callbackParam)) {
             this.callbackParam = StringUtils.deleteWhitespace(callbackParam);
         }
-        uris = FilterUtil.getMatchUris(application.getSrcProperties(), "security.filter.authenticate.uris");
-        ignoreUris = FilterUtil.getMatchUris(application.getSrcProperties(), "security.filter.authenticate.ignoreUris");
-        ignoreUris.addAll(FilterUtil.getMatchUris(application.getSrcProperties(), "security.filter.ignoreUris"));
-        loginUrl = FilterUtil.getLoginUrl(application.getSrcProperties());
-        ignoreUris.add(new URIMatcher(loginUrl));
+        Map<String, Object> map = application.getSrcProperties();
+        uris = FilterUtil.getMatchUris(map, FilterUtil.AUTHENTICATE_URIS_KEY);
+        ignoreUris = FilterUtil.getMatchUris(map, FilterUtil.AUTHENTICATE_IGNORE_URIS_KEY);
+        Set<URIMatcher> globalIgnoreUris = FilterUtil.getMatchUris(map, FilterUtil.IGNORE_URIS_KEY);
+        loginUrl = FilterUtil.getLoginUrl(map);
+        globalIgnoreUris.add(new URIMatcher(loginUrl));
+        urisIndex = FilterUtil.compileMatchUris(map, uris);
+        ignoreUrisIndex = FilterUtil.compileMatchUris(map, ignoreUris);
+        // 与 UriPermissionFilter 共用同一规则组，单次请求只匹配一次
+        globalIgnoreUrisIndex = FilterUtil.compileMatchUris(map, globalIgnoreUris);
+        ignoreUris.addAll(globalIgnoreUris);
+    }
+
+    protected boolean isIgnored(ContainerRequestContext requestContext) {
+        return FilterUtil.isMatchUri(requestContext, FilterUtil.AUTHENTICATE_IGNORE_URIS_KEY, ignoreUrisIndex)
+                || FilterUtil.isMatchUri(requestContext, FilterUtil.IGNORE_URIS_KEY, globalIgnoreUrisIndex);
     }
 
     /**
@@ -68,7 +84,9 @@ public class AuthenticateFilter implements ContainerRequestFilter {
     }
 
     public void filter(ContainerRequestContext requestContext) throws IOException {
-        if ((uris.size() == 0 || FilterUtil.isMatchUri(uris)) && !FilterUtil.isMatchUri(ignoreUris)) {
+        if ((urisIndex.isEmpty()
+                || FilterUtil.isMatchUri(requestContext, FilterUtil.AUTHENTICATE_URIS_KEY, urisIndex))
+                && !isIgnored(requestContext)) {
             Subject subject = subjectProvider.get();
             if (subject == null || (!isAuthorized(subject))) {
                 if (FilterUtil.isVisitPage(requestContext)) {
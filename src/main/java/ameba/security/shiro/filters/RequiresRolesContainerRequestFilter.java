@@ -1,5 +1,7 @@
 package ameba.security.shiro.filters;
 
+import ameba.security.shiro.authz.CompiledAuthorizations;
+import ameba.security.shiro.authz.RoleRegistry;
 import org.apache.shiro.authz.annotation.Logical;
 import org.apache.shiro.authz.annotation.RequiresRoles;
 import org.apache.shiro.subject.Subject;
@@ -20,6 +22,7 @@ import java.util.Objects;
 @Priority(Priorities.AUTHORIZATION)
 public class RequiresRolesContainerRequestFilter extends ShiroContainerRequestFilter {
     private final Collection<String> requiredRoles = new ArrayList<String>();
+    private final long[] requiredRoleBits;
     private final Logical logical;
 
     public RequiresRolesContainerRequestFilter(ResourceInfo resourceInfo) {
@@ -33,10 +36,17 @@ public class RequiresRolesContainerRequestFilter extends ShiroContainerRequestFi
         Objects.requireNonNull(roles);
         logical = roles.logical();
         Collections.addAll(requiredRoles, roles.value());
+        requiredRoleBits = RoleRegistry.toBits(requiredRoles);
     }
 
     @Override
     protected boolean isAccessAllowed(Subject subject) {
+        long[] roleBits = CompiledAuthorizations.getRoleBits(subject);
+        if (roleBits != null) {
+            return logical == Logical.AND
+                    ? RoleRegistry.containsAll(roleBits, requiredRoleBits)
+                    : RoleRegistry.intersects(roleBits, requiredRoleBits);
+        }
         if (logical == Logical.AND) {
             return subject.hasAllRoles(requiredRoles);
         } else {
@@ -1,6 +1,9 @@
 package ameba.security.shiro.filters;
 
+import ameba.security.shiro.cache.CacheWarmer;
 import ameba.security.shiro.internal.mgt.CookieRememberMeManager;
+import ameba.security.shiro.internal.subject.DefaultWebSubject;
+import ameba.security.shiro.util.URIClassification;
 import ameba.util.Cookies;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.shiro.subject.Subject;
@@ -27,9 +30,12 @@ public class ShiroContainerFilter extends OncePerContainerFilter {
 
     @Inject
     private Provider<Subject> subjectProvider;
+    @Inject
+    private CacheWarmer cacheWarmer;
 
     @Override
     public void doFilter(ContainerRequestContext containerRequestContext) {
+        URIClassification.of(containerRequestContext);
         ThreadContext.bind(subjectProvider.get());
     }
 
@@ -44,6 +50,15 @@ public class ShiroContainerFilter extends OncePerContainerFilter {
                 responseContext.getHeaders().add(HttpHeaders.SET_COOKIE, addRemember);
             }
         }
+        Subject subject = ThreadContext.getSubject();
+        // 只记录已解析的身份，不为此触发记住我解析
+        if (subject != null && cacheWarmer.isEnabled()
+                && (!(subject instanceof DefaultWebSubject) || ((DefaultWebSubject) subject).isIdentityResolved())) {
+            cacheWarmer.record(subject.getPrincipals());
+        }
+        if (subject instanceof DefaultWebSubject) {
+            ((DefaultWebSubject) subject).clearAuthorizationCache();
+        }
         ThreadContext.remove();
     }
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import ameba.core.Application;
 import ameba.security.shiro.authz.permission.URIPermission;
 import ameba.security.shiro.util.FilterUtil;
 import ameba.security.shiro.util.URIMatcher;
+import ameba.security.shiro.util.URIMatcherIndex;
 import org.apache.shiro.subject.Subject;
 import org.glassfish.jersey.server.ExtendedUriInfo;
 
@@ -41,10 +42,12 @@ import static ameba.security.shiro.filters.AuthenticateFilter.AUTHENTICATED;
 @Priority(Priorities.AUTHENTICATION + 100)
 public class UriPermissionFilter extends ShiroContainerRequestFilter {
 
-    private static final String IGN_KEY = "security.filter.ignoreUris";
-    private static final String URIS_KEY = "security.filter.uris";
+    private static final String IGN_KEY = FilterUtil.IGNORE_URIS_KEY;
+    private static final String URIS_KEY = FilterUtil.URIS_KEY;
     protected Set<URIMatcher> ignoreUris;
     protected Set<URIMatcher> uris;
+    protected URIMatcherIndex ignoreUrisIndex;
+    protected URIMatcherIndex urisIndex;
     @Context
     private Provider<ExtendedUriInfo> uriInfo;
     @Context
@@ -58,13 +61,16 @@ public class UriPermissionFilter extends ShiroContainerRequestFilter {
         ignoreUris = FilterUtil.getMatchUris(map, IGN_KEY);
         ignoreUris.add(new URIMatcher(FilterUtil.getLoginUrl(map)));
         uris = FilterUtil.getMatchUris(map, URIS_KEY);
+        ignoreUrisIndex = FilterUtil.compileMatchUris(map, ignoreUris);
+        urisIndex = FilterUtil.compileMatchUris(map, uris);
     }
 
     @Override
     public void filter(ContainerRequestContext containerRequestContext) {
         Object authenticated = containerRequestContext.getProperty(AUTHENTICATED);
-        if (authenticated == null && (!FilterUtil.isMatchUri(ignoreUris)
-                && (uris.size() == 0 || FilterUtil.isMatchUri(uris)))) {
+        if (authenticated == null
+                && !FilterUtil.isMatchUri(containerRequestContext, IGN_KEY, ignoreUrisIndex)
+                && (urisIndex.isEmpty() || FilterUtil.isMatchUri(containerRequestContext, URIS_KEY, urisIndex))) {
             super.filter(containerRequestContext);
         }
     }
@@ -1,5 +1,6 @@
 package ameba.security.shiro.internal;
 
+import ameba.security.shiro.cache.CacheWarmer;
 import ameba.security.shiro.internal.subject.DefaultWebSubjectContext;
 import org.apache.shiro.authc.Authenticator;
 import org.apache.shiro.authz.Authorizer;
@@ -20,9 +21,15 @@ import java.util.function.Supplier;
 public class ShiroBinder extends AbstractBinder {
 
     private SecurityManager securityManager;
+    private CacheWarmer cacheWarmer;
 
     public ShiroBinder(SecurityManager securityManager) {
+        this(securityManager, new CacheWarmer(securityManager, false, null, 0, 0, 0));
+    }
+
+    public ShiroBinder(SecurityManager securityManager, CacheWarmer cacheWarmer) {
         this.securityManager = securityManager;
+        this.cacheWarmer = cacheWarmer;
     }
 
     @Override
@@ -42,6 +49,8 @@ public class ShiroBinder extends AbstractBinder {
                 .to(RealmSecurityManager.class)
                 .to(CachingSecurityManager.class)
                 .proxy(false);
+        bind(cacheWarmer)
+                .to(CacheWarmer.class);
     }
 
     static final class SubjectFactory implements Supplier<Subject> {
@@ -0,0 +1,180 @@
+package ameba.security.shiro.internal.mgt;
+
+import ameba.security.shiro.util.BinaryReader;
+import ameba.security.shiro.util.BinaryWriter;
+import com.google.common.collect.Maps;
+import org.apache.shiro.io.DefaultSerializer;
+import org.apache.shiro.io.SerializationException;
+import org.apache.shiro.io.Serializer;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 紧凑的身份集合序列化
+ * <br>
+ * 格式为版本号、realm 数量，每个 realm 依次为 realm 名称（同名只写一次）、身份数量和身份，
+ * Long、Integer 身份为 varint，String 身份为 UTF-8，其他类型的身份需要通过 {@link #setPrincipalCodecs(List)}
+ * 注册 {@link PrincipalCodec}。包含未注册类型的身份集合整体按 {@link DefaultSerializer} 的旧格式写入，
+ * 与升级前相同，注册编解码后即使用紧凑格式；紧凑格式内部不使用 Java 序列化。
+ * 以 Java 序列化头开头的旧格式数据交给 {@link DefaultSerializer}，迁移期间旧 cookie 仍然有效。
+ * <pre>
+ * [main]
+ * principalSerializer = ameba.security.shiro.internal.mgt.CompactPrincipalSerializer
+ * principalSerializer.principalCodecs = $userPrincipalCodec
+ * rememberMeManager.serializer = $principalSerializer
+ * </pre>
+ *
+ * @author icode
+ */
+public class CompactPrincipalSerializer implements Serializer<PrincipalCollection> {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int LONG = 1;
+    private static final int INTEGER = 2;
+    private static final int STRING = 3;
+    private static final int MIN_CUSTOM_TAG = 16;
+    private static final int MAX_CUSTOM_TAG = 126;
+
+    private final DefaultSerializer<PrincipalCollection> legacy = new DefaultSerializer<>();
+    private Map<Class<?>, PrincipalCodec<?>> codecsByType = Collections.emptyMap();
+    private Map<Integer, PrincipalCodec<?>> codecsByTag = Collections.emptyMap();
+
+    /**
+     * @param codecs 自定义身份类型的编解码
+     */
+    public void setPrincipalCodecs(List<PrincipalCodec<?>> codecs) {
+        Map<Class<?>, PrincipalCodec<?>> byType = Maps.newHashMap();
+        Map<Integer, PrincipalCodec<?>> byTag = Maps.newHashMap();
+        if (codecs != null) {
+            for (PrincipalCodec<?> codec : codecs) {
+                int tag = codec.getTag();
+                if (tag < MIN_CUSTOM_TAG || tag > MAX_CUSTOM_TAG) {
+                    throw new IllegalArgumentException("Principal codec tag must be between "
+                            + MIN_CUSTOM_TAG + " and " + MAX_CUSTOM_TAG + ": " + tag);
+                }
+                if (byTag.put(tag, codec) != null) {
+                    throw new IllegalArgumentException("Duplicate principal codec tag: " + tag);
+                }
+                if (byType.put(codec.getType(), codec) != null) {
+                    throw new IllegalArgumentException("Duplicate principal codec type: " + codec.getType().getName());
+                }
+            }
+        }
+        this.codecsByType = byType;
+        this.codecsByTag = byTag;
+    }
+
+    @Override
+    public byte[] serialize(PrincipalCollection principals) throws SerializationException {
+        if (principals == null) {
+            throw new SerializationException("PrincipalCollection must not be null");
+        }
+        if (!isCompactSupported(principals)) {
+            return legacy.serialize(principals);
+        }
+        BinaryWriter writer = new BinaryWriter(64);
+        writer.writeByte(FORMAT_VERSION);
+        Set<String> realms = principals.getRealmNames();
+        writer.writeVarint(realms.size());
+        for (String realm : realms) {
+            writer.writeString(realm);
+            Collection<?> values = principals.fromRealm(realm);
+            writer.writeVarint(values.size());
+            for (Object value : values) {
+                writePrincipal(writer, value);
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * @return 身份是否都可以用紧凑格式写入
+     */
+    protected boolean isCompactSupported(PrincipalCollection principals) {
+        for (Object value : principals) {
+            Class<?> type = value.getClass();
+            if (type != Long.class && type != Integer.class && type != String.class
+                    && !codecsByType.containsKey(type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writePrincipal(BinaryWriter writer, Object value) {
+        Class<?> type = value.getClass();
+        if (type == Long.class) {
+            writer.writeByte(LONG).writeSignedVarlong((Long) value);
+        } else if (type == Integer.class) {
+            writer.writeByte(INTEGER).writeSignedVarlong((Integer) value);
+        } else if (type == String.class) {
+            writer.writeByte(STRING).writeString((String) value);
+        } else {
+            PrincipalCodec<Object> codec = (PrincipalCodec<Object>) codecsByType.get(type);
+            if (codec == null) {
+                throw new SerializationException("Unsupported principal type: " + type.getName()
+                        + ", register a PrincipalCodec for it");
+            }
+            writer.writeByte(codec.getTag());
+            codec.write(writer, value);
+        }
+    }
+
+    @Override
+    public PrincipalCollection deserialize(byte[] serialized) throws SerializationException {
+        if (serialized == null || serialized.length == 0) {
+            throw new SerializationException("Serialized principals must not be empty");
+        }
+        if (serialized.length >= 2 && (serialized[0] & 0xff) == 0xAC && (serialized[1] & 0xff) == 0xED) {
+            return legacy.deserialize(serialized);
+        }
+        try {
+            BinaryReader reader = new BinaryReader(serialized);
+            int version = reader.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new SerializationException("Unsupported principal format version: " + version);
+            }
+            SimplePrincipalCollection principals = new SimplePrincipalCollection();
+            int realms = reader.readVarint();
+            for (int i = 0; i < realms; i++) {
+                String realm = reader.readString();
+                int count = reader.readVarint();
+                for (int j = 0; j < count; j++) {
+                    principals.add(readPrincipal(reader), realm);
+                }
+            }
+            if (reader.hasRemaining()) {
+                throw new SerializationException("Trailing bytes after serialized principals");
+            }
+            return principals;
+        } catch (IllegalArgumentException | ClassCastException e) {
+            throw new SerializationException("Malformed serialized principals", e);
+        }
+    }
+
+    private Object readPrincipal(BinaryReader reader) {
+        int tag = reader.readByte();
+        switch (tag) {
+            case LONG:
+                return reader.readSignedVarlong();
+            case INTEGER:
+                return (int) reader.readSignedVarlong();
+            case STRING:
+                return reader.readString();
+            default:
+                PrincipalCodec<?> codec = codecsByTag.get(tag);
+                if (codec == null) {
+                    throw new SerializationException("Unknown principal tag: " + tag);
+                }
+                return codec.read(reader);
+        }
+    }
+}
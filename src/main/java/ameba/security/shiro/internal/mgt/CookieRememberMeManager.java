@@ -3,8 +3,12 @@ package ameba.security.shiro.internal.mgt;
 import ameba.core.Requests;
 import ameba.util.Cookies;
 import ameba.util.Times;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
 import org.apache.shiro.codec.Base64;
 import org.apache.shiro.mgt.AbstractRememberMeManager;
+import org.apache.shiro.subject.PrincipalCollection;
 import org.apache.shiro.subject.Subject;
 import org.apache.shiro.subject.SubjectContext;
 import org.slf4j.Logger;
@@ -12,9 +16,17 @@ import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.core.Cookie;
 import javax.ws.rs.core.NewCookie;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * 记住我
+ * <br>
+ * 解码后的身份按 cookie 值的 SHA-256 摘要缓存，同一 cookie 的后续请求不再解码、解密和反序列化，
+ * forgetIdentity 时移除当前 cookie 对应的缓存。
+ * 身份默认使用 {@link CompactPrincipalSerializer} 序列化。
+ *
  * @author icode
  */
 public class CookieRememberMeManager extends AbstractRememberMeManager {
@@ -25,6 +37,10 @@ public class CookieRememberMeManager extends AbstractRememberMeManager {
     public static final int COOKIE_MAX_AGE = Times.parseDuration("7d");
     private static final Logger logger = LoggerFactory.getLogger(CookieRememberMeManager.class);
     private CookieTemplate cookie;
+    private boolean principalCacheEnabled = true;
+    private long principalCacheMaxSize = 10000;
+    private long principalCacheTtlMillis = TimeUnit.MINUTES.toMillis(10);
+    private volatile Cache<String, PrincipalCollection> principalCache;
 
     public CookieRememberMeManager() {
         this.cookie = new CookieTemplate(
@@ -37,6 +53,7 @@ public class CookieRememberMeManager extends AbstractRememberMeManager {
                 COOKIE_MAX_AGE,
                 null,
                 true);
+        setSerializer(new CompactPrincipalSerializer());
     }
 
     public CookieTemplate getCookie() {
@@ -47,15 +64,106 @@ public class CookieRememberMeManager extends AbstractRememberMeManager {
         this.cookie = cookie;
     }
 
+    public boolean isPrincipalCacheEnabled() {
+        return principalCacheEnabled;
+    }
+
+    public void setPrincipalCacheEnabled(boolean principalCacheEnabled) {
+        this.principalCacheEnabled = principalCacheEnabled;
+        this.principalCache = null;
+    }
+
+    public long getPrincipalCacheMaxSize() {
+        return principalCacheMaxSize;
+    }
+
+    public void setPrincipalCacheMaxSize(long principalCacheMaxSize) {
+        this.principalCacheMaxSize = principalCacheMaxSize;
+        this.principalCache = null;
+    }
+
+    public long getPrincipalCacheTtlMillis() {
+        return principalCacheTtlMillis;
+    }
+
+    public void setPrincipalCacheTtlMillis(long principalCacheTtlMillis) {
+        this.principalCacheTtlMillis = principalCacheTtlMillis;
+        this.principalCache = null;
+    }
+
+    protected Cache<String, PrincipalCollection> getPrincipalCache() {
+        if (!principalCacheEnabled) {
+            return null;
+        }
+        Cache<String, PrincipalCollection> cache = principalCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = principalCache;
+                if (cache == null) {
+                    cache = CacheBuilder.newBuilder()
+                            .maximumSize(principalCacheMaxSize)
+                            .expireAfterWrite(principalCacheTtlMillis, TimeUnit.MILLISECONDS)
+                            .build();
+                    principalCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    private static String digest(String cookieValue) {
+        return Hashing.sha256().hashString(cookieValue, StandardCharsets.UTF_8).toString();
+    }
+
+    @Override
+    public PrincipalCollection getRememberedPrincipals(SubjectContext subjectContext) {
+        Cache<String, PrincipalCollection> cache = getPrincipalCache();
+        if (cache == null || isIdentityRemoved()) {
+            return super.getRememberedPrincipals(subjectContext);
+        }
+        String value = getRememberedCookieValue();
+        if (value == null) {
+            return null;
+        }
+        String digest = digest(value);
+        PrincipalCollection principals = cache.getIfPresent(digest);
+        if (principals == null) {
+            principals = super.getRememberedPrincipals(subjectContext);
+            if (principals != null && !isIdentityRemoved()) {
+                cache.put(digest, principals);
+            }
+        }
+        return principals;
+    }
+
     @Override
     protected void forgetIdentity(Subject subject) {
         forgetIdentity();
     }
 
     private void forgetIdentity() {
+        Cache<String, PrincipalCollection> cache = principalCache;
+        if (cache != null) {
+            String value = getRememberedCookieValue();
+            if (value != null) {
+                cache.invalidate(digest(value));
+            }
+        }
         Requests.setProperty(RM_REMEMBER_COOKIE_KEY, this.cookie.getName());
     }
 
+    /**
+     * @return 请求中记住我 cookie 的值，没有或已删除时返回 null
+     */
+    private String getRememberedCookieValue() {
+        Cookie cookie = Requests.getCookies().get(getCookie().getName());
+        if (cookie == null) {
+            return null;
+        }
+        String value = cookie.getValue();
+        return Cookies.DELETED_COOKIE_VALUE.equals(value) ? null : value;
+    }
+
     @Override
     protected void rememberSerializedIdentity(Subject subject, byte[] serialized) {
         String base64 = Base64.encodeToString(serialized);
@@ -81,12 +189,7 @@ public class CookieRememberMeManager extends AbstractRememberMeManager {
             return null;
         }
 
-        Cookie cookie = Requests.getCookies().get(getCookie().getName());
-        //no cookie set - new site visitor?
-        if (cookie == null) return null;
-        String base64 = cookie.getValue();
-        if (Cookies.DELETED_COOKIE_VALUE.equals(base64)) return null;
-
+        String base64 = getRememberedCookieValue();
         if (base64 != null) {
             base64 = ensurePadding(base64);
             logger.trace("Acquired Base64 encoded identity [" + base64 + "]");
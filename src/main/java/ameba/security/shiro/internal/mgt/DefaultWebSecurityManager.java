@@ -2,8 +2,11 @@ package ameba.security.shiro.internal.mgt;
 
 import ameba.security.shiro.internal.session.DefaultWebSessionManager;
 import ameba.security.shiro.internal.subject.DefaultWebSubjectContext;
+import ameba.security.shiro.internal.subject.DefaultWebSubject;
 import org.apache.shiro.mgt.DefaultSecurityManager;
 import org.apache.shiro.realm.Realm;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.Subject;
 import org.apache.shiro.subject.SubjectContext;
 
 import java.util.Collection;
@@ -13,6 +16,11 @@ import java.util.Collection;
  */
 public class DefaultWebSecurityManager extends DefaultSecurityManager {
 
+    /**
+     * 是否推迟解析记住我身份，直到首次获取身份或进行授权检查，默认关闭
+     */
+    private boolean lazyRememberMe;
+
     public DefaultWebSecurityManager() {
         super();
         setSubjectFactory(new DefaultWebSubjectFactory());
@@ -30,6 +38,51 @@ public class DefaultWebSecurityManager extends DefaultSecurityManager {
         setRealms(realms);
     }
 
+    public boolean isLazyRememberMe() {
+        return lazyRememberMe;
+    }
+
+    /**
+     * @param lazyRememberMe 推迟解析记住我身份，开启后创建 Subject 时不读取 cookie，
+     *                       身份解析后才保存 Subject，未使用身份的请求不解密 cookie
+     */
+    public void setLazyRememberMe(boolean lazyRememberMe) {
+        this.lazyRememberMe = lazyRememberMe;
+    }
+
+    @Override
+    protected SubjectContext resolvePrincipals(SubjectContext context) {
+        if (!lazyRememberMe || getRememberMeManager() == null
+                || !(context instanceof DefaultWebSubjectContext)) {
+            return super.resolvePrincipals(context);
+        }
+        PrincipalCollection principals = context.resolvePrincipals();
+        if (principals == null || principals.isEmpty()) {
+            // 记住我身份由 DefaultWebSubject 在首次使用时解析
+            ((DefaultWebSubjectContext) context).setRememberedIdentityDeferred(true);
+        }
+        return context;
+    }
+
+    /**
+     * 解析推迟的记住我身份
+     *
+     * @param context 创建 Subject 时的上下文
+     * @return 记住的身份，没有时返回 null
+     */
+    public PrincipalCollection resolveRememberedIdentity(SubjectContext context) {
+        return getRememberedIdentity(context);
+    }
+
+    @Override
+    protected void save(Subject subject) {
+        // 身份尚未解析时不保存，由 DefaultWebSubject 解析后再保存
+        if (subject instanceof DefaultWebSubject && !((DefaultWebSubject) subject).isIdentityResolved()) {
+            return;
+        }
+        super.save(subject);
+    }
+
     @Override
     protected SubjectContext createSubjectContext() {
         return new DefaultWebSubjectContext();
@@ -1,16 +1,30 @@
 package ameba.security.shiro.internal.mgt;
 
+import ameba.security.shiro.internal.subject.DefaultWebSubject;
+import ameba.security.shiro.internal.subject.DefaultWebSubjectContext;
 import org.apache.shiro.mgt.DefaultSubjectFactory;
 import org.apache.shiro.session.Session;
 import org.apache.shiro.subject.PrincipalCollection;
 import org.apache.shiro.subject.Subject;
 import org.apache.shiro.subject.SubjectContext;
-import org.apache.shiro.subject.support.DelegatingSubject;
 
 /**
  * @author icode
  */
 public class DefaultWebSubjectFactory extends DefaultSubjectFactory {
+    /**
+     * 是否在请求内缓存角色、权限检查结果
+     */
+    private boolean requestAuthorizationCacheEnabled = false;
+
+    public boolean isRequestAuthorizationCacheEnabled() {
+        return requestAuthorizationCacheEnabled;
+    }
+
+    public void setRequestAuthorizationCacheEnabled(boolean requestAuthorizationCacheEnabled) {
+        this.requestAuthorizationCacheEnabled = requestAuthorizationCacheEnabled;
+    }
+
     public Subject createSubject(SubjectContext context) {
         org.apache.shiro.mgt.SecurityManager securityManager = context.resolveSecurityManager();
         Session session = context.resolveSession();
@@ -18,7 +32,10 @@ public class DefaultWebSubjectFactory extends DefaultSubjectFactory {
         PrincipalCollection principals = context.resolvePrincipals();
         boolean authenticated = context.resolveAuthenticated();
         String host = context.resolveHost();
+        SubjectContext rememberedIdentityContext = context instanceof DefaultWebSubjectContext
+                && ((DefaultWebSubjectContext) context).isRememberedIdentityDeferred() ? context : null;
 
-        return new DelegatingSubject(principals, authenticated, host, session, sessionEnabled, securityManager);
+        return new DefaultWebSubject(principals, authenticated, host, session, sessionEnabled, securityManager,
+                requestAuthorizationCacheEnabled, rememberedIdentityContext);
     }
 }
@@ -0,0 +1,26 @@
+package ameba.security.shiro.internal.mgt;
+
+import ameba.security.shiro.util.BinaryReader;
+import ameba.security.shiro.util.BinaryWriter;
+
+/**
+ * {@link CompactPrincipalSerializer} 中自定义身份类型的编解码
+ *
+ * @author icode
+ */
+public interface PrincipalCodec<T> {
+
+    /**
+     * @return 写入数据的类型标记，16 ~ 126 之间，同一个序列化器中不能重复，修改后已发出的 cookie 失效
+     */
+    int getTag();
+
+    /**
+     * @return 身份的类型，只处理类型完全相同的身份，不包括子类
+     */
+    Class<T> getType();
+
+    void write(BinaryWriter writer, T principal);
+
+    T read(BinaryReader reader);
+}
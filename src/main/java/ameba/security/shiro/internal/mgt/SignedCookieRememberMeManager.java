@@ -0,0 +1,161 @@
+package ameba.security.shiro.internal.mgt;
+
+import ameba.security.shiro.util.BinaryReader;
+import ameba.security.shiro.util.BinaryWriter;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.shiro.codec.Base64;
+import org.apache.shiro.crypto.CryptoException;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SubjectContext;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用 HMAC 签名令牌的记住我
+ * <br>
+ * cookie 内容为版本号、密钥编号、签发时间、过期时间、序列化后的身份和 HMAC-SHA256 签名，
+ * 只签名不加密。读取时先检查过期时间，过期令牌不做任何签名计算；
+ * 可以同时配置多个密钥，新令牌使用 activeKeyId 签名，其他密钥仍可验证已签发的令牌，用于密钥轮换。
+ * <pre>
+ * [main]
+ * rememberMeManager = ameba.security.shiro.internal.mgt.SignedCookieRememberMeManager
+ * rememberMeManager.keys = k1:base64Secret1, k2:base64Secret2
+ * rememberMeManager.activeKeyId = k2
+ * securityManager.rememberMeManager = $rememberMeManager
+ * </pre>
+ *
+ * @author icode
+ */
+public class SignedCookieRememberMeManager extends CookieRememberMeManager {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 32;
+
+    private Map<String, SecretKeySpec> keys = Collections.emptyMap();
+    private String activeKeyId;
+    private long tokenTtlMillis = TimeUnit.SECONDS.toMillis(COOKIE_MAX_AGE);
+
+    public SignedCookieRememberMeManager() {
+        // 签名验证已足够快，且缓存会绕过过期检查
+        setPrincipalCacheEnabled(false);
+    }
+
+    /**
+     * @param keys 密钥编号与 Base64 编码的密钥
+     */
+    public void setKeys(Map<String, String> keys) {
+        Map<String, SecretKeySpec> parsed = Maps.newHashMap();
+        if (keys != null) {
+            for (Map.Entry<String, String> entry : keys.entrySet()) {
+                byte[] secret = Base64.decode(entry.getValue().trim());
+                if (secret.length < MAC_LENGTH) {
+                    throw new IllegalArgumentException("Remember me key [" + entry.getKey()
+                            + "] must be at least " + MAC_LENGTH + " bytes");
+                }
+                parsed.put(entry.getKey().trim(), new SecretKeySpec(secret, ALGORITHM));
+            }
+        }
+        this.keys = parsed;
+    }
+
+    public String getActiveKeyId() {
+        return activeKeyId;
+    }
+
+    public void setActiveKeyId(String activeKeyId) {
+        this.activeKeyId = activeKeyId;
+    }
+
+    public long getTokenTtlMillis() {
+        return tokenTtlMillis;
+    }
+
+    public void setTokenTtlMillis(long tokenTtlMillis) {
+        this.tokenTtlMillis = tokenTtlMillis;
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    protected byte[] sign(SecretKeySpec key, byte[] data, int length) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            mac.update(data, 0, length);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException("Unable to sign remember me token", e);
+        }
+    }
+
+    @Override
+    protected byte[] convertPrincipalsToBytes(PrincipalCollection principals) {
+        SecretKeySpec key = StringUtils.isBlank(activeKeyId) ? null : keys.get(activeKeyId);
+        if (key == null) {
+            throw new IllegalStateException("Active remember me key [" + activeKeyId + "] is not configured");
+        }
+        long issuedAt = now();
+        BinaryWriter writer = new BinaryWriter(128);
+        writer.writeByte(FORMAT_VERSION)
+                .writeString(activeKeyId)
+                .writeVarlong(issuedAt)
+                .writeVarlong(issuedAt + tokenTtlMillis)
+                .writeBytes(serialize(principals));
+        byte[] unsigned = writer.toByteArray();
+        byte[] token = Arrays.copyOf(unsigned, unsigned.length + MAC_LENGTH);
+        System.arraycopy(sign(key, unsigned, unsigned.length), 0, token, unsigned.length, MAC_LENGTH);
+        return token;
+    }
+
+    @Override
+    protected PrincipalCollection convertBytesToPrincipals(byte[] bytes, SubjectContext subjectContext) {
+        if (bytes == null || bytes.length <= MAC_LENGTH) {
+            throw new CryptoException("Malformed remember me token");
+        }
+        String keyId;
+        long expiresAt;
+        byte[] payload;
+        int signedLength;
+        try {
+            BinaryReader reader = new BinaryReader(bytes);
+            if (reader.readByte() != FORMAT_VERSION) {
+                throw new CryptoException("Unsupported remember me token version");
+            }
+            keyId = reader.readString();
+            reader.readVarlong();
+            expiresAt = reader.readVarlong();
+            // 过期令牌不做签名计算，直接丢弃
+            if (expiresAt <= now()) {
+                forgetIdentity(subjectContext);
+                return null;
+            }
+            payload = reader.readBytes();
+            signedLength = reader.position();
+        } catch (IllegalArgumentException e) {
+            throw new CryptoException("Malformed remember me token", e);
+        }
+        if (bytes.length != signedLength + MAC_LENGTH) {
+            throw new CryptoException("Malformed remember me token");
+        }
+        SecretKeySpec key = keyId == null ? null : keys.get(keyId);
+        if (key == null) {
+            throw new CryptoException("Unknown remember me key [" + keyId + "]");
+        }
+        byte[] expected = sign(key, bytes, signedLength);
+        byte[] actual = Arrays.copyOfRange(bytes, signedLength, bytes.length);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            throw new CryptoException("Invalid remember me token signature");
+        }
+        return deserialize(payload);
+    }
+}
@@ -6,7 +6,9 @@ import org.apache.shiro.session.Session;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
 
 /**
  * @author icode
@@ -14,10 +16,26 @@ import java.util.Date;
 public class DefaultWebSession implements Session {
 
 
-    private AbstractSession session;
+    private final AbstractSession session;
+    /**
+     * 本请求 touch 之前底层会话的时间戳，即上一次访问的时间
+     */
+    private final long lastAccessTime;
+    private Map<Object, Object> attributes;
+    private Collection<Object> attributeKeys;
 
     public DefaultWebSession(AbstractSession session) {
         this.session = session;
+        // 包装在本请求首次获取会话时创建，此时还没有 touch
+        this.lastAccessTime = session.getTimestamp();
+    }
+
+    /**
+     * @param session 底层会话
+     * @return 是否包装了该会话
+     */
+    public boolean isBackedBy(AbstractSession session) {
+        return this.session == session;
     }
 
     @Override
@@ -25,14 +43,39 @@ public class DefaultWebSession implements Session {
         return session.getId();
     }
 
+    /**
+     * 内部使用，避免创建 Date
+     *
+     * @return 会话时间戳的毫秒数
+     */
+    public long getStartTimestampMillis() {
+        return session.getTimestamp();
+    }
+
+    /**
+     * 内部使用，避免创建 Date
+     *
+     * @return 本请求之前最后一次访问会话时间的毫秒数，本请求的 touch 不会改变该值
+     */
+    public long getLastAccessTimeMillis() {
+        return lastAccessTime;
+    }
+
+    /**
+     * @return 会话时间戳的副本
+     */
     @Override
     public Date getStartTimestamp() {
-        return new Date(session.getTimestamp());
+        return new Date(getStartTimestampMillis());
     }
 
+    /**
+     * @return 本请求之前最后一次访问会话时间的副本
+     * @see #getLastAccessTimeMillis()
+     */
     @Override
     public Date getLastAccessTime() {
-        return new Date(System.currentTimeMillis());
+        return new Date(getLastAccessTimeMillis());
     }
 
     @Override
@@ -61,8 +104,15 @@ public class DefaultWebSession implements Session {
     }
 
     @Override
-    public Collection<Object> getAttributeKeys() throws InvalidSessionException {
-        return session.getAttributes().keySet();
+    public synchronized Collection<Object> getAttributeKeys() throws InvalidSessionException {
+        Map<Object, Object> map = session.getAttributes();
+        Collection<Object> keys = attributeKeys;
+        if (keys == null || attributes != map) {
+            keys = Collections.unmodifiableSet(map.keySet());
+            attributes = map;
+            attributeKeys = keys;
+        }
+        return keys;
     }
 
     @Override
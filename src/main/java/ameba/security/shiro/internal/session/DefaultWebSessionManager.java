@@ -1,5 +1,6 @@
 package ameba.security.shiro.internal.session;
 
+import ameba.core.Requests;
 import ameba.http.session.AbstractSession;
 import org.apache.shiro.session.Session;
 import org.apache.shiro.session.SessionException;
@@ -8,9 +9,12 @@ import org.apache.shiro.session.mgt.SessionKey;
 import org.apache.shiro.session.mgt.SessionManager;
 
 /**
+ * 会话包装按请求缓存，同一请求内底层会话不变时复用同一个 {@link DefaultWebSession}
+ *
  * @author icode
  */
 public class DefaultWebSessionManager implements SessionManager {
+    private static final String SESSION_REQ_KEY = DefaultWebSessionManager.class.getName() + ".session";
 
     @Override
     public Session start(SessionContext context) {
@@ -24,9 +28,15 @@ public class DefaultWebSessionManager implements SessionManager {
 
     private Session getSession(boolean create) {
         AbstractSession session = ameba.http.session.Session.get(create);
-        if (session != null)
-            return new DefaultWebSession(session);
-        else return null;
+        if (session == null) {
+            return null;
+        }
+        DefaultWebSession webSession = (DefaultWebSession) Requests.getProperty(SESSION_REQ_KEY);
+        if (webSession == null || !webSession.isBackedBy(session)) {
+            webSession = new DefaultWebSession(session);
+            Requests.setProperty(SESSION_REQ_KEY, webSession);
+        }
+        return webSession;
     }
 
 }
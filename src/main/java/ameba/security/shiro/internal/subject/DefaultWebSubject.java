@@ -0,0 +1,297 @@
+package ameba.security.shiro.internal.subject;
+
+import ameba.security.shiro.authz.CompiledAuthorizations;
+import ameba.security.shiro.internal.mgt.DefaultWebSecurityManager;
+import com.google.common.collect.Maps;
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.mgt.SecurityManager;
+import org.apache.shiro.session.Session;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SubjectContext;
+import org.apache.shiro.subject.support.DelegatingSubject;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 请求级别的 Subject
+ * <br>
+ * 开启 authorizationCacheEnabled 后，同一请求内相同的角色、权限检查只委托给 SecurityManager 一次，
+ * 身份变化（登录、登出、runAs）时清空，请求结束时由 ShiroContainerFilter 清空。
+ * <br>
+ * 记住我身份可推迟解析，首次调用 getPrincipals、isRemembered 或授权检查时才读取 cookie，
+ * 解析后再由 SecurityManager 保存 Subject。
+ *
+ * @author icode
+ */
+public class DefaultWebSubject extends DelegatingSubject {
+
+    private final boolean authorizationCacheEnabled;
+    private final Map<String, Boolean> roles;
+    private final Map<Object, Boolean> permissions;
+    private volatile SubjectContext rememberedIdentityContext;
+
+    public DefaultWebSubject(PrincipalCollection principals, boolean authenticated, String host,
+                             Session session, boolean sessionCreationEnabled, SecurityManager securityManager,
+                             boolean authorizationCacheEnabled) {
+        this(principals, authenticated, host, session, sessionCreationEnabled, securityManager,
+                authorizationCacheEnabled, null);
+    }
+
+    /**
+     * @param rememberedIdentityContext 推迟解析记住我身份时的上下文，不推迟时为 null
+     */
+    public DefaultWebSubject(PrincipalCollection principals, boolean authenticated, String host,
+                             Session session, boolean sessionCreationEnabled, SecurityManager securityManager,
+                             boolean authorizationCacheEnabled, SubjectContext rememberedIdentityContext) {
+        super(principals, authenticated, host, session, sessionCreationEnabled, securityManager);
+        this.authorizationCacheEnabled = authorizationCacheEnabled;
+        this.roles = authorizationCacheEnabled ? Maps.newConcurrentMap() : null;
+        this.permissions = authorizationCacheEnabled ? Maps.newConcurrentMap() : null;
+        this.rememberedIdentityContext = securityManager instanceof DefaultWebSecurityManager
+                ? rememberedIdentityContext : null;
+    }
+
+    /**
+     * @return 身份是否已解析，推迟解析的记住我身份尚未读取时返回 false
+     */
+    public boolean isIdentityResolved() {
+        return rememberedIdentityContext == null;
+    }
+
+    private void resolveIdentity() {
+        resolveIdentity(true);
+    }
+
+    /**
+     * @param save 解析后是否保存 Subject，登出时不保存，避免为即将停止的会话创建 session
+     */
+    private void resolveIdentity(boolean save) {
+        if (rememberedIdentityContext == null) {
+            return;
+        }
+        synchronized (this) {
+            SubjectContext context = rememberedIdentityContext;
+            if (context == null) {
+                return;
+            }
+            DefaultWebSecurityManager manager = (DefaultWebSecurityManager) securityManager;
+            PrincipalCollection remembered = manager.resolveRememberedIdentity(context);
+            if (remembered != null && !remembered.isEmpty()) {
+                this.principals = remembered;
+            }
+            rememberedIdentityContext = null;
+            if (save) {
+                manager.getSubjectDAO().save(this);
+            }
+        }
+    }
+
+    @Override
+    public PrincipalCollection getPrincipals() {
+        resolveIdentity();
+        return super.getPrincipals();
+    }
+
+    public boolean isAuthorizationCacheEnabled() {
+        return authorizationCacheEnabled;
+    }
+
+    public void clearAuthorizationCache() {
+        if (authorizationCacheEnabled) {
+            roles.clear();
+            permissions.clear();
+        }
+    }
+
+    @Override
+    public boolean hasRole(String roleIdentifier) {
+        if (!authorizationCacheEnabled || roleIdentifier == null) {
+            return super.hasRole(roleIdentifier);
+        }
+        Boolean result = roles.get(roleIdentifier);
+        if (result == null) {
+            result = super.hasRole(roleIdentifier);
+            roles.put(roleIdentifier, result);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean[] hasRoles(List<String> roleIdentifiers) {
+        if (!authorizationCacheEnabled || roleIdentifiers == null) {
+            return super.hasRoles(roleIdentifiers);
+        }
+        boolean[] result = new boolean[roleIdentifiers.size()];
+        int i = 0;
+        for (String role : roleIdentifiers) {
+            result[i++] = hasRole(role);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean hasAllRoles(Collection<String> roleIdentifiers) {
+        if (!authorizationCacheEnabled || roleIdentifiers == null) {
+            return super.hasAllRoles(roleIdentifiers);
+        }
+        for (String role : roleIdentifiers) {
+            if (!hasRole(role)) {
+                return false;
+            }
+        }
+        return hasPrincipals();
+    }
+
+    @Override
+    public boolean isPermitted(String permission) {
+        if (!authorizationCacheEnabled || permission == null) {
+            return super.isPermitted(permission);
+        }
+        Boolean result = permissions.get(permission);
+        if (result == null) {
+            result = super.isPermitted(permission);
+            permissions.put(permission, result);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isPermitted(Permission permission) {
+        if (!authorizationCacheEnabled || permission == null) {
+            return super.isPermitted(permission);
+        }
+        Boolean result = permissions.get(permission);
+        if (result == null) {
+            result = super.isPermitted(permission);
+            permissions.put(permission, result);
+        }
+        return result;
+    }
+
+    /**
+     * 批量检查权限，所有 realm 都是 URIAuthorizingRealm 时每个 realm 只读取一次授权信息
+     */
+    @Override
+    public boolean[] isPermitted(String... permissions) {
+        if (permissions == null || permissions.length == 0) {
+            return super.isPermitted(permissions);
+        }
+        if (!authorizationCacheEnabled) {
+            boolean[] result = CompiledAuthorizations.isPermitted(this, permissions);
+            return result == null ? super.isPermitted(permissions) : result;
+        }
+        boolean[] result = new boolean[permissions.length];
+        int[] missIndexes = new int[permissions.length];
+        int missCount = 0;
+        for (int i = 0; i < permissions.length; i++) {
+            Boolean cached = permissions[i] == null ? null : this.permissions.get(permissions[i]);
+            if (cached == null) {
+                missIndexes[missCount++] = i;
+            } else {
+                result[i] = cached;
+            }
+        }
+        if (missCount == 0) {
+            return result;
+        }
+        String[] missed = new String[missCount];
+        for (int i = 0; i < missCount; i++) {
+            missed[i] = permissions[missIndexes[i]];
+        }
+        boolean[] checked = CompiledAuthorizations.isPermitted(this, missed);
+        if (checked == null) {
+            checked = super.isPermitted(missed);
+        }
+        for (int i = 0; i < missCount; i++) {
+            result[missIndexes[i]] = checked[i];
+            if (missed[i] != null) {
+                this.permissions.put(missed[i], checked[i]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean[] isPermitted(List<Permission> permissions) {
+        if (!authorizationCacheEnabled || permissions == null) {
+            return super.isPermitted(permissions);
+        }
+        boolean[] result = new boolean[permissions.size()];
+        int i = 0;
+        for (Permission permission : permissions) {
+            result[i++] = isPermitted(permission);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isPermittedAll(String... permissions) {
+        if (!authorizationCacheEnabled || permissions == null) {
+            return super.isPermittedAll(permissions);
+        }
+        for (String permission : permissions) {
+            if (!isPermitted(permission)) {
+                return false;
+            }
+        }
+        return hasPrincipals();
+    }
+
+    @Override
+    public boolean isPermittedAll(Collection<Permission> permissions) {
+        if (!authorizationCacheEnabled || permissions == null) {
+            return super.isPermittedAll(permissions);
+        }
+        for (Permission permission : permissions) {
+            if (!isPermitted(permission)) {
+                return false;
+            }
+        }
+        return hasPrincipals();
+    }
+
+    @Override
+    public void login(AuthenticationToken token) throws AuthenticationException {
+        clearAuthorizationCache();
+        try {
+            super.login(token);
+            // 登录后的身份覆盖记住我身份，无需再解析
+            rememberedIdentityContext = null;
+        } finally {
+            clearAuthorizationCache();
+        }
+    }
+
+    @Override
+    public void logout() {
+        // realm 需要在登出时根据身份清理缓存
+        resolveIdentity(false);
+        try {
+            super.logout();
+        } finally {
+            clearAuthorizationCache();
+        }
+    }
+
+    @Override
+    public void runAs(PrincipalCollection principals) throws NullPointerException, IllegalStateException {
+        try {
+            super.runAs(principals);
+        } finally {
+            clearAuthorizationCache();
+        }
+    }
+
+    @Override
+    public PrincipalCollection releaseRunAs() {
+        try {
+            return super.releaseRunAs();
+        } finally {
+            clearAuthorizationCache();
+        }
+    }
+}
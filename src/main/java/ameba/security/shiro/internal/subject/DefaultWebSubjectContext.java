@@ -11,6 +11,9 @@ import java.io.Serializable;
  * @author icode
  */
 public class DefaultWebSubjectContext extends DefaultSubjectContext {
+    private static final String REMEMBERED_IDENTITY_DEFERRED =
+            DefaultWebSubjectContext.class.getName() + ".REMEMBERED_IDENTITY_DEFERRED";
+
     public DefaultWebSubjectContext() {
     }
 
@@ -18,6 +21,17 @@ public class DefaultWebSubjectContext extends DefaultSubjectContext {
         super(context);
     }
 
+    /**
+     * @return 是否推迟到首次使用身份时才解析记住我身份
+     */
+    public boolean isRememberedIdentityDeferred() {
+        Boolean deferred = getTypedValue(REMEMBERED_IDENTITY_DEFERRED, Boolean.class);
+        return deferred != null && deferred;
+    }
+
+    public void setRememberedIdentityDeferred(boolean deferred) {
+        put(REMEMBERED_IDENTITY_DEFERRED, deferred);
+    }
 
     @Override
     public String resolveHost() {
@@ -0,0 +1,379 @@
+package ameba.security.shiro.realm;
+
+import ameba.security.shiro.cache.CacheSpec;
+import ameba.security.shiro.cache.DefaultCacheManager;
+import ameba.security.shiro.cache.LocalCache;
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationListener;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.LogoutAware;
+import org.apache.shiro.authc.UnknownAccountException;
+import org.apache.shiro.authz.AuthorizationException;
+import org.apache.shiro.authz.Authorizer;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.UnauthorizedException;
+import org.apache.shiro.authz.permission.PermissionResolver;
+import org.apache.shiro.authz.permission.PermissionResolverAware;
+import org.apache.shiro.authz.permission.RolePermissionResolver;
+import org.apache.shiro.authz.permission.RolePermissionResolverAware;
+import org.apache.shiro.cache.Cache;
+import org.apache.shiro.cache.CacheManager;
+import org.apache.shiro.cache.CacheManagerAware;
+import org.apache.shiro.realm.Realm;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.util.Destroyable;
+import org.apache.shiro.util.LifecycleUtils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 缓存不存在账号的 Realm 装饰
+ * <br>
+ * 被装饰的 realm 对某个身份返回 null 或抛出 {@link UnknownAccountException} 时，
+ * 在 ttlMillis 内对同一身份返回相同的结果：返回 null 或抛出相同消息的 {@link UnknownAccountException}，
+ * 不再查询数据库、LDAP；密码错误等其他异常不会被缓存。
+ * 授权检查、权限解析器、登录监听和销毁直接委托给被装饰的 realm。
+ * <pre>
+ * [main]
+ * myRealm = com.example.MyRealm
+ * cachingRealm = ameba.security.shiro.realm.NegativeCachingRealm
+ * cachingRealm.realm = $myRealm
+ * cachingRealm.maxEntries = 10000
+ * cachingRealm.ttlMillis = 30000
+ * securityManager.realms = $cachingRealm
+ * </pre>
+ *
+ * @author icode
+ */
+public class NegativeCachingRealm implements Realm, Authorizer, CacheManagerAware, LogoutAware,
+        PermissionResolverAware, RolePermissionResolverAware, AuthenticationListener, Destroyable {
+
+    /**
+     * 被装饰的 realm 返回 null
+     */
+    private static final Miss NOT_FOUND = new Miss(null);
+
+    private Realm realm;
+    private long maxEntries = 10000;
+    private long ttlMillis = 30000;
+    private boolean principalCaseSensitive = true;
+    private CacheManager cacheManager;
+    private volatile Cache<Object, Miss> negativeCache;
+
+    public NegativeCachingRealm() {
+    }
+
+    public NegativeCachingRealm(Realm realm) {
+        this.realm = realm;
+    }
+
+    public Realm getRealm() {
+        return realm;
+    }
+
+    public void setRealm(Realm realm) {
+        this.realm = realm;
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(long maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public boolean isPrincipalCaseSensitive() {
+        return principalCaseSensitive;
+    }
+
+    /**
+     * @param principalCaseSensitive 账号是否区分大小写，不区分时以小写作为缓存 key
+     */
+    public void setPrincipalCaseSensitive(boolean principalCaseSensitive) {
+        this.principalCaseSensitive = principalCaseSensitive;
+    }
+
+    @Override
+    public void setCacheManager(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+        this.negativeCache = null;
+        if (realm instanceof CacheManagerAware) {
+            ((CacheManagerAware) realm).setCacheManager(cacheManager);
+        }
+    }
+
+    protected Cache<Object, Miss> getNegativeCache() {
+        Cache<Object, Miss> cache = negativeCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = negativeCache;
+                if (cache == null) {
+                    String name = getName() + ".negativeAuthenticationCache";
+                    cache = cacheManager instanceof DefaultCacheManager
+                            ? ((DefaultCacheManager) cacheManager).getNegativeCache(name, maxEntries, ttlMillis)
+                            : new LocalCache<>(new CacheSpec(maxEntries, ttlMillis, 0));
+                    negativeCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @param principal 登录提交的身份
+     * @return 缓存 key，无法作为 key 时返回 null
+     */
+    protected Object getNegativeCacheKey(Object principal) {
+        if (principal instanceof String) {
+            String key = ((String) principal).trim();
+            return principalCaseSensitive ? key : key.toLowerCase(Locale.ROOT);
+        }
+        return principal;
+    }
+
+    /**
+     * 账号已创建时清除该账号的缓存
+     *
+     * @param principal 身份
+     */
+    public void clearNegativeCache(Object principal) {
+        Object key = getNegativeCacheKey(principal);
+        if (key != null) {
+            getNegativeCache().remove(key);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return realm.getName();
+    }
+
+    @Override
+    public boolean supports(AuthenticationToken token) {
+        return realm.supports(token);
+    }
+
+    @Override
+    public AuthenticationInfo getAuthenticationInfo(AuthenticationToken token) throws AuthenticationException {
+        Object key = getNegativeCacheKey(token.getPrincipal());
+        if (key == null) {
+            return realm.getAuthenticationInfo(token);
+        }
+        Cache<Object, Miss> cache = getNegativeCache();
+        Miss miss = cache.get(key);
+        if (miss != null) {
+            if (miss.unknownAccountMessage != null) {
+                throw new UnknownAccountException(miss.unknownAccountMessage);
+            }
+            return null;
+        }
+        AuthenticationInfo info;
+        try {
+            info = realm.getAuthenticationInfo(token);
+        } catch (UnknownAccountException e) {
+            cache.put(key, new Miss(e.getMessage() == null ? "" : e.getMessage()));
+            throw e;
+        }
+        if (info == null) {
+            cache.put(key, NOT_FOUND);
+        }
+        return info;
+    }
+
+    @Override
+    public void setPermissionResolver(PermissionResolver permissionResolver) {
+        if (realm instanceof PermissionResolverAware) {
+            ((PermissionResolverAware) realm).setPermissionResolver(permissionResolver);
+        }
+    }
+
+    @Override
+    public void setRolePermissionResolver(RolePermissionResolver rolePermissionResolver) {
+        if (realm instanceof RolePermissionResolverAware) {
+            ((RolePermissionResolverAware) realm).setRolePermissionResolver(rolePermissionResolver);
+        }
+    }
+
+    @Override
+    public void onSuccess(AuthenticationToken token, AuthenticationInfo info) {
+        if (realm instanceof AuthenticationListener) {
+            ((AuthenticationListener) realm).onSuccess(token, info);
+        }
+    }
+
+    @Override
+    public void onFailure(AuthenticationToken token, AuthenticationException ae) {
+        if (realm instanceof AuthenticationListener) {
+            ((AuthenticationListener) realm).onFailure(token, ae);
+        }
+    }
+
+    @Override
+    public void onLogout(PrincipalCollection principals) {
+        if (realm instanceof LogoutAware) {
+            ((LogoutAware) realm).onLogout(principals);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        LifecycleUtils.destroy(realm);
+    }
+
+
+    private Authorizer authorizer() {
+        return realm instanceof Authorizer ? (Authorizer) realm : null;
+    }
+
+    private UnauthorizedException notAuthorizer() {
+        return new UnauthorizedException("Realm [" + getName() + "] does not support authorization");
+    }
+
+    @Override
+    public boolean isPermitted(PrincipalCollection principals, String permission) {
+        Authorizer authorizer = authorizer();
+        return authorizer != null && authorizer.isPermitted(principals, permission);
+    }
+
+    @Override
+    public boolean isPermitted(PrincipalCollection subjectPrincipal, Permission permission) {
+        Authorizer authorizer = authorizer();
+        return authorizer != null && authorizer.isPermitted(subjectPrincipal, permission);
+    }
+
+    @Override
+    public boolean[] isPermitted(PrincipalCollection subjectPrincipal, String... permissions) {
+        Authorizer authorizer = authorizer();
+        return authorizer != null ? authorizer.isPermitted(subjectPrincipal, permissions)
+                : new boolean[permissions == null ? 0 : permissions.length];
+    }
+
+    @Override
+    public boolean[] isPermitted(PrincipalCollection subjectPrincipal, List<Permission> permissions) {
+        Authorizer authorizer = authorizer();
+        return authorizer != null ? authorizer.isPermitted(subjectPrincipal, permissions)
+                : new boolean[permissions == null ? 0 : permissions.size()];
+    }
+
+    @Override
+    public boolean isPermittedAll(PrincipalCollection subjectPrincipal, String... permissions) {
+        Authorizer authorizer = authorizer();
+        return authorizer != null && authorizer.isPermittedAll(subjectPrincipal, permissions);
+    }
+
+    @Override
+    public boolean isPermittedAll(PrincipalCollection subjectPrincipal, Collection<Permission> permissions) {
+        Authorizer authorizer = authorizer();
+        return authorizer != null && authorizer.isPermittedAll(subjectPrincipal, permissions);
+    }
+
+    @Override
+    public void checkPermission(PrincipalCollection subjectPrincipal, String permission) throws AuthorizationException {
+        Authorizer authorizer = authorizer();
+        if (authorizer == null) {
+            throw notAuthorizer();
+        }
+        authorizer.checkPermission(subjectPrincipal, permission);
+    }
+
+    @Override
+    public void checkPermission(PrincipalCollection subjectPrincipal, Permission permission) throws AuthorizationException {
+        Authorizer authorizer = authorizer();
+        if (authorizer == null) {
+            throw notAuthorizer();
+        }
+        authorizer.checkPermission(subjectPrincipal, permission);
+    }
+
+    @Override
+    public void checkPermissions(PrincipalCollection subjectPrincipal, String... permissions) throws AuthorizationException {
+        Authorizer authorizer = authorizer();
+        if (authorizer == null) {
+            throw notAuthorizer();
+        }
+        authorizer.checkPermissions(subjectPrincipal, permissions);
+    }
+
+    @Override
+    public void checkPermissions(PrincipalCollection subjectPrincipal, Collection<Permission> permissions)
+            throws AuthorizationException {
+        Authorizer authorizer = authorizer();
+        if (authorizer == null) {
+            throw notAuthorizer();
+        }
+        authorizer.checkPermissions(subjectPrincipal, permissions);
+    }
+
+    @Override
+    public boolean hasRole(PrincipalCollection subjectPrincipal, String roleIdentifier) {
+        Authorizer authorizer = authorizer();
+        return authorizer != null && authorizer.hasRole(subjectPrincipal, roleIdentifier);
+    }
+
+    @Override
+    public boolean[] hasRoles(PrincipalCollection subjectPrincipal, List<String> roleIdentifiers) {
+        Authorizer authorizer = authorizer();
+        return authorizer != null ? authorizer.hasRoles(subjectPrincipal, roleIdentifiers)
+                : new boolean[roleIdentifiers == null ? 0 : roleIdentifiers.size()];
+    }
+
+    @Override
+    public boolean hasAllRoles(PrincipalCollection subjectPrincipal, Collection<String> roleIdentifiers) {
+        Authorizer authorizer = authorizer();
+        return authorizer != null && authorizer.hasAllRoles(subjectPrincipal, roleIdentifiers);
+    }
+
+    @Override
+    public void checkRole(PrincipalCollection subjectPrincipal, String roleIdentifier) throws AuthorizationException {
+        Authorizer authorizer = authorizer();
+        if (authorizer == null) {
+            throw notAuthorizer();
+        }
+        authorizer.checkRole(subjectPrincipal, roleIdentifier);
+    }
+
+    @Override
+    public void checkRoles(PrincipalCollection subjectPrincipal, Collection<String> roleIdentifiers)
+            throws AuthorizationException {
+        Authorizer authorizer = authorizer();
+        if (authorizer == null) {
+            throw notAuthorizer();
+        }
+        authorizer.checkRoles(subjectPrincipal, roleIdentifiers);
+    }
+
+    @Override
+    public void checkRoles(PrincipalCollection subjectPrincipal, String... roleIdentifiers) throws AuthorizationException {
+        Authorizer authorizer = authorizer();
+        if (authorizer == null) {
+            throw notAuthorizer();
+        }
+        authorizer.checkRoles(subjectPrincipal, roleIdentifiers);
+    }
+
+    /**
+     * 缓存的未找到结果
+     */
+    protected static final class Miss {
+        /**
+         * 被装饰的 realm 抛出 {@link UnknownAccountException} 时的消息，返回 null 时为 null
+         */
+        private final String unknownAccountMessage;
+
+        private Miss(String unknownAccountMessage) {
+            this.unknownAccountMessage = unknownAccountMessage;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package ameba.security.shiro.realm;
+
+import ameba.security.shiro.authz.CompiledAuthorizationInfo;
+import ameba.security.shiro.authz.permission.URIPermission;
+import ameba.security.shiro.cache.CacheSpec;
+import ameba.security.shiro.cache.DefaultCacheManager;
+import ameba.security.shiro.cache.LoadingCache;
+import ameba.security.shiro.cache.LocalCache;
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.cache.Cache;
+import org.apache.shiro.cache.CacheManager;
+import org.apache.shiro.realm.AuthorizingRealm;
+import org.apache.shiro.subject.PrincipalCollection;
+
+import java.util.Collection;
+
+/**
+ * 支持 {@link URIPermission} 索引的 AuthorizingRealm
+ * <br>
+ * doGetAuthorizationInfo 返回的授权信息会被编译为 {@link CompiledAuthorizationInfo}
+ * 并代替原始授权信息放入缓存，之后的权限检查不再逐个解析、遍历权限。
+ * 缓存为 {@link LoadingCache} 时并发未命中共享同一次加载。
+ * 设置 negativeAuthorizationTtlMillis 后，doGetAuthorizationInfo 返回 null 的身份在该时间内不再重复查询。
+ *
+ * @author icode
+ */
+public abstract class URIAuthorizingRealm extends AuthorizingRealm {
+
+    private static final Boolean NO_AUTHORIZATION_INFO = Boolean.TRUE;
+
+    private long negativeAuthorizationTtlMillis;
+    private long negativeAuthorizationMaxEntries = 10000;
+    private volatile Cache<Object, Boolean> negativeAuthorizationCache;
+
+    public long getNegativeAuthorizationTtlMillis() {
+        return negativeAuthorizationTtlMillis;
+    }
+
+    /**
+     * @param negativeAuthorizationTtlMillis 没有授权信息的结果缓存时间（毫秒），0 为不缓存
+     */
+    public void setNegativeAuthorizationTtlMillis(long negativeAuthorizationTtlMillis) {
+        this.negativeAuthorizationTtlMillis = negativeAuthorizationTtlMillis;
+        this.negativeAuthorizationCache = null;
+    }
+
+    public long getNegativeAuthorizationMaxEntries() {
+        return negativeAuthorizationMaxEntries;
+    }
+
+    public void setNegativeAuthorizationMaxEntries(long negativeAuthorizationMaxEntries) {
+        this.negativeAuthorizationMaxEntries = negativeAuthorizationMaxEntries;
+        this.negativeAuthorizationCache = null;
+    }
+
+    protected Cache<Object, Boolean> getNegativeAuthorizationCache() {
+        if (negativeAuthorizationTtlMillis <= 0) {
+            return null;
+        }
+        Cache<Object, Boolean> cache = negativeAuthorizationCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = negativeAuthorizationCache;
+                if (cache == null) {
+                    String name = getName() + ".negativeAuthorizationCache";
+                    CacheManager cacheManager = getCacheManager();
+                    cache = cacheManager instanceof DefaultCacheManager
+                            ? ((DefaultCacheManager) cacheManager).getNegativeCache(name,
+                            negativeAuthorizationMaxEntries, negativeAuthorizationTtlMillis)
+                            : new LocalCache<>(new CacheSpec(negativeAuthorizationMaxEntries,
+                            negativeAuthorizationTtlMillis, 0));
+                    negativeAuthorizationCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    @Override
+    protected void afterCacheManagerSet() {
+        super.afterCacheManagerSet();
+        negativeAuthorizationCache = null;
+    }
+
+    @Override
+    protected void clearCachedAuthorizationInfo(PrincipalCollection principals) {
+        super.clearCachedAuthorizationInfo(principals);
+        Cache<Object, Boolean> negative = negativeAuthorizationCache;
+        if (negative != null && principals != null) {
+            negative.remove(getAuthorizationCacheKey(principals));
+        }
+    }
+
+    private AuthorizationInfo load(PrincipalCollection principals) {
+        Cache<Object, Boolean> negative = getNegativeAuthorizationCache();
+        if (negative == null) {
+            return doGetAuthorizationInfo(principals);
+        }
+        Object key = getAuthorizationCacheKey(principals);
+        if (negative.get(key) != null) {
+            return null;
+        }
+        AuthorizationInfo info = doGetAuthorizationInfo(principals);
+        if (info == null) {
+            negative.put(key, NO_AUTHORIZATION_INFO);
+        }
+        return info;
+    }
+
+    /**
+     * 获取已编译的授权信息
+     *
+     * @param principals 身份信息
+     * @return 已编译的授权信息，没有授权信息时返回 null
+     */
+    public CompiledAuthorizationInfo getCompiledAuthorizationInfo(PrincipalCollection principals) {
+        // 子类覆盖 getAuthorizationInfo 时可能返回未编译的授权信息
+        return compile(getAuthorizationInfo(principals));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected AuthorizationInfo getAuthorizationInfo(PrincipalCollection principals) {
+        if (principals == null) {
+            return null;
+        }
+        if (!isAuthorizationCachingEnabled()) {
+            return compile(load(principals));
+        }
+        Cache<Object, AuthorizationInfo> cache = getAvailableAuthorizationCache();
+        if (cache == null) {
+            return compile(load(principals));
+        }
+        Object key = getAuthorizationCacheKey(principals);
+        AuthorizationInfo info;
+        if (cache instanceof LoadingCache) {
+            // 同一身份的并发未命中只调用一次 doGetAuthorizationInfo
+            info = ((LoadingCache<Object, AuthorizationInfo>) cache)
+                    .get(key, () -> compile(load(principals)));
+            if (info == null) {
+                return null;
+            } else if (info instanceof CompiledAuthorizationInfo) {
+                return compile(info);
+            }
+            return cache(principals, info);
+        }
+        info = cache.get(key);
+        if (info == null) {
+            info = load(principals);
+        } else if (info instanceof CompiledAuthorizationInfo) {
+            return compile(info);
+        }
+        return cache(principals, info);
+    }
+
+    /**
+     * 与父类一致，缓存未设置时通过 CacheManager 创建
+     */
+    private Cache<Object, AuthorizationInfo> getAvailableAuthorizationCache() {
+        Cache<Object, AuthorizationInfo> cache = getAuthorizationCache();
+        if (cache == null) {
+            synchronized (this) {
+                cache = getAuthorizationCache();
+                CacheManager cacheManager = getCacheManager();
+                if (cache == null && cacheManager != null) {
+                    cache = cacheManager.getCache(getAuthorizationCacheName());
+                    setAuthorizationCache(cache);
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * 使用可被子类覆盖的 {@link #isPermitted(Permission, AuthorizationInfo)} 检查权限
+     *
+     * @param permission 需要检查的权限
+     * @param info       授权信息
+     * @return 拥有权限：true，否则false
+     */
+    public boolean isPermittedBy(AuthorizationInfo info, Permission permission) {
+        return isPermitted(permission, info);
+    }
+
+    private AuthorizationInfo cache(PrincipalCollection principals, AuthorizationInfo info) {
+        if (info == null) {
+            return null;
+        }
+        CompiledAuthorizationInfo compiled = compile(info);
+        Cache<Object, AuthorizationInfo> cache = getAuthorizationCache();
+        if (cache != null) {
+            cache.put(getAuthorizationCacheKey(principals), compiled);
+        }
+        return compiled;
+    }
+
+    protected CompiledAuthorizationInfo compile(AuthorizationInfo info) {
+        if (info == null) {
+            return null;
+        }
+        CompiledAuthorizationInfo compiled = info instanceof CompiledAuthorizationInfo
+                ? (CompiledAuthorizationInfo) info
+                : new CompiledAuthorizationInfo(info);
+        if (!compiled.isCompiled()) {
+            compiled.compile(super.getPermissions(compiled.getDelegate()));
+        }
+        return compiled;
+    }
+
+    @Override
+    protected Collection<Permission> getPermissions(AuthorizationInfo info) {
+        if (info instanceof CompiledAuthorizationInfo) {
+            return compile(info).getPermissions();
+        }
+        return super.getPermissions(info);
+    }
+
+    @Override
+    protected boolean isPermitted(Permission permission, AuthorizationInfo info) {
+        if (info instanceof CompiledAuthorizationInfo) {
+            return compile(info).implies(permission);
+        }
+        return super.isPermitted(permission, info);
+    }
+}
@@ -0,0 +1,100 @@
+package ameba.security.shiro.util;
+
+import com.google.common.collect.Lists;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 紧凑二进制读取，格式见 {@link BinaryWriter}
+ *
+ * @author icode
+ */
+public class BinaryReader {
+
+    private final List<String> dictionary = Lists.newArrayList();
+    private final byte[] buffer;
+    private int position;
+
+    public BinaryReader(byte[] buffer) {
+        this(buffer, 0);
+    }
+
+    public BinaryReader(byte[] buffer, int offset) {
+        this.buffer = buffer;
+        this.position = offset;
+    }
+
+    private void require(int length) {
+        if (length < 0 || position + length > buffer.length) {
+            throw new IllegalArgumentException("Truncated binary data at " + position);
+        }
+    }
+
+    public int readByte() {
+        require(1);
+        return buffer[position++] & 0xff;
+    }
+
+    public int readVarint() {
+        long value = readVarlong();
+        if ((value & ~0xffffffffL) != 0) {
+            throw new IllegalArgumentException("Varint too long at " + position);
+        }
+        return (int) value;
+    }
+
+    public long readVarlong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint at " + position);
+    }
+
+    public long readSignedVarlong() {
+        long value = readVarlong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public byte[] readBytes() {
+        int length = readVarint();
+        require(length);
+        byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+        position += length;
+        return bytes;
+    }
+
+    public String readString() {
+        int value = readVarint();
+        if (value == 0) {
+            return null;
+        }
+        if ((value & 1) == 1) {
+            int index = value >>> 1;
+            if (index >= dictionary.size()) {
+                throw new IllegalArgumentException("Unknown string reference " + index + " at " + position);
+            }
+            return dictionary.get(index);
+        }
+        int length = (value >>> 1) - 1;
+        require(length);
+        String string = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        dictionary.add(string);
+        return string;
+    }
+
+    public boolean hasRemaining() {
+        return position < buffer.length;
+    }
+
+    public int position() {
+        return position;
+    }
+}
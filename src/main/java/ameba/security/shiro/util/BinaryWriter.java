@@ -0,0 +1,99 @@
+package ameba.security.shiro.util;
+
+import com.google.common.collect.Maps;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 紧凑二进制写入
+ * <br>
+ * 整数使用 varint，字符串首次出现时写入内容，再次出现时只写入字典编号。
+ *
+ * @author icode
+ * @see BinaryReader
+ */
+public class BinaryWriter {
+
+    private final Map<String, Integer> dictionary = Maps.newHashMap();
+    private byte[] buffer;
+    private int size;
+
+    public BinaryWriter() {
+        this(256);
+    }
+
+    public BinaryWriter(int initialCapacity) {
+        buffer = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, size + extra));
+        }
+    }
+
+    public BinaryWriter writeByte(int b) {
+        ensure(1);
+        buffer[size++] = (byte) b;
+        return this;
+    }
+
+    public BinaryWriter writeVarint(int value) {
+        return writeVarlong(value & 0xffffffffL);
+    }
+
+    public BinaryWriter writeVarlong(long value) {
+        ensure(10);
+        while ((value & ~0x7fL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+        return this;
+    }
+
+    /**
+     * 使用 zigzag 编码写入有符号整数，绝对值小的负数也只占少量字节
+     */
+    public BinaryWriter writeSignedVarlong(long value) {
+        return writeVarlong((value << 1) ^ (value >> 63));
+    }
+
+    public BinaryWriter writeBytes(byte[] bytes) {
+        writeVarint(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+        return this;
+    }
+
+    /**
+     * 写入字符串，null 为 0，字典引用为奇数，新字符串为偶数后跟 UTF-8 内容
+     */
+    public BinaryWriter writeString(String value) {
+        if (value == null) {
+            return writeVarint(0);
+        }
+        Integer index = dictionary.get(value);
+        if (index != null) {
+            return writeVarint((index << 1) | 1);
+        }
+        dictionary.put(value, dictionary.size());
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint((bytes.length + 1) << 1);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+}
@@ -17,6 +17,12 @@ import java.util.Set;
  */
 public class FilterUtil {
     public static final String DEFAULT_LOGIN_URL = "/login";
+    public static final String IGNORE_URIS_KEY = "security.filter.ignoreUris";
+    public static final String URIS_KEY = "security.filter.uris";
+    public static final String AUTHENTICATE_IGNORE_URIS_KEY = "security.filter.authenticate.ignoreUris";
+    public static final String AUTHENTICATE_URIS_KEY = "security.filter.authenticate.uris";
+    public static final String REGEX_ENGINE_KEY = "security.filter.regex.engine";
+    public static final String LINEAR_REGEX_ENGINE = "nfa";
     private static final MediaType LOW_IE_DEFAULT_REQ_TYPE = new MediaType("application", "x-ms-application");
 
     private FilterUtil() {
@@ -38,16 +44,22 @@ public class FilterUtil {
     }
 
     public static boolean isMatchUri(Set<URIMatcher> matchers) {
-        URI path = Requests.getUriInfo().getRequestUri();
+        URI uri = Requests.getUriInfo().getRequestUri();
+        String path = uri.getPath();
+        String query = uri.getQuery();
         String method = Requests.getMethod();
         for (URIMatcher matcher : matchers) {
-            if (matcher.matches(path, method)) {
+            if (matcher.matches(path, query, method)) {
                 return true;
             }
         }
         return false;
     }
 
+    public static boolean isMatchUri(ContainerRequestContext requestContext, String family, URIMatcherIndex index) {
+        return URIClassification.of(requestContext).matches(family, index);
+    }
+
     public static Set<URIMatcher> getMatchUris(Map<String, Object> props, String key) {
         Set<String> ignoreUris = Sets.newLinkedHashSet();
         String ignores = (String) props.get(key);
@@ -71,6 +83,19 @@ public class FilterUtil {
     }
 
 
+    /**
+     * 编译规则索引，配置 security.filter.regex.engine=nfa 时正则规则使用线性时间的自动机匹配
+     *
+     * @param props    配置
+     * @param matchers 规则
+     * @return 规则索引
+     */
+    public static URIMatcherIndex compileMatchUris(Map<String, Object> props, Set<URIMatcher> matchers) {
+        String engine = (String) props.get(REGEX_ENGINE_KEY);
+        boolean linearRegex = LINEAR_REGEX_ENGINE.equalsIgnoreCase(StringUtils.trimToEmpty(engine));
+        return URIMatcherIndex.compile(matchers, linearRegex);
+    }
+
     public static boolean isVisitPage(ContainerRequestContext requestContext) {
         List<MediaType> mediaTypes = requestContext.getAcceptableMediaTypes();
         return mediaTypes.size() == 0
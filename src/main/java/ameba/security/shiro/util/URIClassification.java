@@ -0,0 +1,93 @@
+package ameba.security.shiro.util;
+
+import com.google.common.collect.Maps;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 单次请求的 URI 分类结果
+ * <br>
+ * 请求 URI 与方法只读取一次，每组规则（以配置键命名）的匹配结果只计算一次，
+ * 并随 {@link ContainerRequestContext} 在各过滤器之间共享。
+ * 同一配置键在所有过滤器中必须对应相同的规则集合。
+ *
+ * @author icode
+ */
+public class URIClassification {
+    public static final String PROPERTY_NAME = URIClassification.class.getName();
+
+    private final URI requestUri;
+    private final String path;
+    private final String query;
+    private final String method;
+    private final Map<String, Boolean> matched = Maps.newHashMapWithExpectedSize(4);
+
+    public URIClassification(URI requestUri, String method) {
+        this.requestUri = requestUri;
+        this.path = requestUri.getPath();
+        this.query = requestUri.getQuery();
+        this.method = method;
+    }
+
+    /**
+     * 获取当前请求的分类结果，不存在时创建并保存到请求上下文中
+     *
+     * @param requestContext 请求上下文
+     * @return 分类结果
+     */
+    public static URIClassification of(ContainerRequestContext requestContext) {
+        Object classification = requestContext.getProperty(PROPERTY_NAME);
+        if (classification instanceof URIClassification) {
+            return (URIClassification) classification;
+        }
+        URIClassification created = new URIClassification(
+                requestContext.getUriInfo().getRequestUri(),
+                requestContext.getMethod()
+        );
+        requestContext.setProperty(PROPERTY_NAME, created);
+        return created;
+    }
+
+    public URI getRequestUri() {
+        return requestUri;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * 当前请求是否匹配该组规则，结果按规则组缓存
+     *
+     * @param family 规则组名称，通常为配置键
+     * @param index  规则组对应的索引
+     * @return 匹配：true，否则false
+     */
+    public boolean matches(String family, URIMatcherIndex index) {
+        Boolean result = matched.get(family);
+        if (result == null) {
+            result = index.matches(path, query, method);
+            matched.put(family, result);
+        }
+        return result;
+    }
+
+    /**
+     * @param family 规则组名称
+     * @return 已计算过的匹配结果，未计算时返回 null
+     */
+    public Boolean getMatched(String family) {
+        return matched.get(family);
+    }
+
+    public Map<String, Boolean> getMatchedFamilies() {
+        return Collections.unmodifiableMap(matched);
+    }
+}
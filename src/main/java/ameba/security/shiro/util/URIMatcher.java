@@ -3,6 +3,7 @@ package ameba.security.shiro.util;
 import com.google.common.collect.Sets;
 import org.apache.commons.lang3.StringUtils;
 
+import javax.ws.rs.HttpMethod;
 import java.io.Serializable;
 import java.net.URI;
 import java.util.Set;
@@ -25,6 +26,11 @@ public class URIMatcher implements Serializable {
     private int oneDepthMatchLength;
 
     private boolean uriRegex = false;
+    /**
+     * 标准请求方法的位掩码，非标准方法仍使用 methods 匹配
+     */
+    private int methodMask;
+    private boolean anyMethod;
 
 
     public URIMatcher(String uriWithM) {
@@ -46,6 +52,14 @@ public class URIMatcher implements Serializable {
             }
         }
 
+        for (String mt : methods) {
+            if (WILDCARD_TOKEN.equals(mt)) {
+                anyMethod = true;
+            } else {
+                methodMask |= methodBit(mt);
+            }
+        }
+
         if (!this.uri.startsWith("/")) {
             this.uri = "/" + this.uri;
         }
@@ -99,32 +113,115 @@ public class URIMatcher implements Serializable {
         return uriPattern;
     }
 
+    public boolean isPreMatch() {
+        return preMatch;
+    }
+
+    public boolean isOneDepthMatch() {
+        return oneDepthMatch;
+    }
+
+    public boolean hasQuery() {
+        return hasQuery;
+    }
+
     public boolean matches(URI reqUri, String method) {
-        if (getMethods().contains(WILDCARD_TOKEN)
-                || getMethods().contains(method)) {
-            String uri = getUri();
-            String path = reqUri.getPath();
-            if (hasQuery) {
-                path += ("?" + reqUri.getQuery());
-            }
-            if (isUriRegex()) {
-                return getUriPattern().matcher(path).matches();
-            } else {
-                if (preMatch) {
-                    if (!path.endsWith("/")) {
-                        path += "/";
-                    }
-                    return path.startsWith(uri);
-                } else if (oneDepthMatch) {
-                    if (path.length() < uri.length()) {
-                        path += "/";
-                    }
-                    return path.startsWith(uri)
-                            && (path.length() <= oneDepthMatchLength
-                            || path.indexOf("/", oneDepthMatchLength) == -1);
-                } else return path.equals(uri);
+        return isMethodAllowed(method)
+                && matches(reqUri.getPath(), hasQuery ? reqUri.getQuery() : null, method);
+    }
+
+    /**
+     * 使用已解码的路径匹配，匹配过程不分配对象（正则规则除外）
+     *
+     * @param path   已解码的请求路径
+     * @param method 请求方法
+     * @return 匹配：true，否则false
+     */
+    public boolean matches(String path, String method) {
+        return isMethodAllowed(method) && matchesPath(path);
+    }
+
+    /**
+     * 使用已解码的路径和查询参数匹配，只有带查询参数的规则才会拼接路径
+     *
+     * @param path   已解码的请求路径
+     * @param query  已解码的查询参数，可为 null
+     * @param method 请求方法
+     * @return 匹配：true，否则false
+     */
+    public boolean matches(String path, String query, String method) {
+        if (!isMethodAllowed(method)) {
+            return false;
+        }
+        return matchesPath(hasQuery ? path + "?" + query : path);
+    }
+
+    protected boolean isMethodAllowed(String method) {
+        if (anyMethod) {
+            return true;
+        }
+        if (method == null) {
+            return false;
+        }
+        int bit = methodBit(method);
+        return bit != 0 ? (methodMask & bit) != 0 : getMethods().contains(method);
+    }
+
+    protected boolean matchesPath(String path) {
+        String uri = getUri();
+        if (isUriRegex()) {
+            return getUriPattern().matcher(path).matches();
+        } else if (preMatch) {
+            // 等价于 (path.endsWith("/") ? path : path + "/").startsWith(uri)
+            return path.startsWith(uri)
+                    || (!endsWithSeparator(path) && isSeparatorAppended(path, uri));
+        } else if (oneDepthMatch) {
+            // 等价于 path 长度不足时补 "/" 后再比较
+            if (path.length() < uri.length()) {
+                return isSeparatorAppended(path, uri);
             }
+            return path.startsWith(uri)
+                    && (path.length() <= oneDepthMatchLength
+                    || path.indexOf('/', oneDepthMatchLength) == -1);
+        } else return path.equals(uri);
+    }
+
+    private static boolean endsWithSeparator(String path) {
+        return path.length() > 0 && path.charAt(path.length() - 1) == '/';
+    }
+
+    /**
+     * @return (path + "/").equals(uri)
+     */
+    private static boolean isSeparatorAppended(String path, String uri) {
+        int length = path.length();
+        return length + 1 == uri.length()
+                && uri.charAt(length) == '/'
+                && uri.regionMatches(0, path, 0, length);
+    }
+
+    private static int methodBit(String method) {
+        switch (method) {
+            case HttpMethod.GET:
+                return 1;
+            case HttpMethod.POST:
+                return 1 << 1;
+            case HttpMethod.PUT:
+                return 1 << 2;
+            case HttpMethod.DELETE:
+                return 1 << 3;
+            case HttpMethod.HEAD:
+                return 1 << 4;
+            case HttpMethod.OPTIONS:
+                return 1 << 5;
+            case "PATCH":
+                return 1 << 6;
+            case "TRACE":
+                return 1 << 7;
+            case "CONNECT":
+                return 1 << 8;
+            default:
+                return 0;
         }
-        return false;
     }
 }
@@ -0,0 +1,290 @@
+package ameba.security.shiro.util;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 预编译的 {@link URIMatcher} 规则索引
+ * <br>
+ * 精确、* 、** 规则按路径段编译成字典树，并按请求方法分派，
+ * 匹配耗时与路径深度相关，与规则数量无关；
+ * 正则规则可选择合并编译为 {@link URIRegexAutomaton}，线性时间匹配；
+ * 其余带查询参数及非按段对齐的规则仍逐个匹配。
+ *
+ * @author icode
+ */
+public class URIMatcherIndex {
+    private static final char PATH_SEPARATOR = '/';
+
+    private final List<URIMatcher> matchers;
+    private final List<URIMatcher> fallback = Lists.newArrayList();
+    private final Node anyMethod = new Node();
+    private final Map<String, Node> methods = Maps.newHashMap();
+    private final URIRegexAutomaton regexAutomaton;
+
+    protected URIMatcherIndex(Collection<URIMatcher> matchers, boolean linearRegex) {
+        this.matchers = ImmutableList.copyOf(matchers);
+        List<URIMatcher> regexMatchers = Lists.newArrayList();
+        for (URIMatcher matcher : this.matchers) {
+            if (linearRegex && matcher.isUriRegex() && !matcher.hasQuery()) {
+                regexMatchers.add(matcher);
+            } else {
+                add(matcher);
+            }
+        }
+        regexAutomaton = regexMatchers.isEmpty() ? null : URIRegexAutomaton.compile(regexMatchers);
+    }
+
+    public static URIMatcherIndex compile(Collection<URIMatcher> matchers) {
+        return compile(matchers, false);
+    }
+
+    /**
+     * @param matchers    规则
+     * @param linearRegex 是否将正则规则合并编译为线性时间的自动机
+     * @return 规则索引
+     * @throws IllegalArgumentException 正则规则无法安全编译时
+     */
+    public static URIMatcherIndex compile(Collection<URIMatcher> matchers, boolean linearRegex) {
+        return new URIMatcherIndex(matchers, linearRegex);
+    }
+
+    private static boolean isIndexable(URIMatcher matcher) {
+        if (matcher.isUriRegex() || matcher.hasQuery()) {
+            return false;
+        }
+        String uri = matcher.getUri();
+        if (matcher.isPreMatch() || matcher.isOneDepthMatch()) {
+            // 只有按段对齐的前缀才能用字典树表示，如 /a/** 、/a/*
+            return uri.endsWith("/") && !uri.contains("//");
+        }
+        return uri.startsWith("/");
+    }
+
+    private void add(URIMatcher matcher) {
+        if (!isIndexable(matcher)) {
+            fallback.add(matcher);
+            return;
+        }
+        Set<String> ms = matcher.getMethods();
+        if (ms.contains(URIMatcher.WILDCARD_TOKEN)) {
+            anyMethod.add(matcher);
+        } else {
+            for (String method : ms) {
+                Node root = methods.get(method);
+                if (root == null) {
+                    root = new Node();
+                    methods.put(method, root);
+                }
+                root.add(matcher);
+            }
+        }
+    }
+
+    public List<URIMatcher> getMatchers() {
+        return matchers;
+    }
+
+    public int size() {
+        return matchers.size();
+    }
+
+    public boolean isEmpty() {
+        return matchers.isEmpty();
+    }
+
+    public URIRegexAutomaton getRegexAutomaton() {
+        return regexAutomaton;
+    }
+
+    public boolean matches(URI reqUri, String method) {
+        return matches(reqUri.getPath(), reqUri.getQuery(), method);
+    }
+
+    /**
+     * 使用已解码的路径和查询参数匹配，字典树和自动机匹配过程不分配对象
+     *
+     * @param path   已解码的请求路径
+     * @param query  已解码的查询参数，可为 null
+     * @param method 请求方法
+     * @return 匹配：true，否则false
+     */
+    public boolean matches(String path, String query, String method) {
+        if (path == null || path.isEmpty() || path.charAt(0) != PATH_SEPARATOR) {
+            for (URIMatcher matcher : matchers) {
+                if (matcher.matches(path, query, method)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (anyMethod.matches(path)) {
+            return true;
+        }
+        Node root = methods.get(method);
+        if (root != null && root.matches(path)) {
+            return true;
+        }
+        if (regexAutomaton != null && regexAutomaton.match(path, method) >= 0) {
+            return true;
+        }
+        // 按下标遍历，避免创建迭代器
+        for (int i = 0, size = fallback.size(); i < size; i++) {
+            if (fallback.get(i).matches(path, query, method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Node {
+        /**
+         * 子节点开放寻址表，查找时直接比较路径中的区间，避免 substring
+         */
+        private String[] segments;
+        private int[] hashes;
+        private Node[] children;
+        private int size;
+        /**
+         * 路径段与当前节点完全一致
+         */
+        private boolean exact;
+        /**
+         * ** 规则，匹配当前节点及其所有子路径
+         */
+        private boolean prefix;
+        /**
+         * * 规则，匹配当前节点及其下一层路径
+         */
+        private boolean oneDepth;
+
+        private void add(URIMatcher matcher) {
+            String uri = matcher.getUri();
+            Node node = this;
+            if (matcher.isPreMatch() || matcher.isOneDepthMatch()) {
+                // 去掉首尾的 "/"，"/" 本身即为根节点
+                if (uri.length() > 1) {
+                    for (String segment : uri.substring(1, uri.length() - 1).split("/", -1)) {
+                        node = node.child(segment);
+                    }
+                }
+                if (matcher.isPreMatch()) {
+                    node.prefix = true;
+                } else {
+                    node.oneDepth = true;
+                }
+            } else {
+                for (String segment : uri.substring(1).split("/", -1)) {
+                    node = node.child(segment);
+                }
+                node.exact = true;
+            }
+        }
+
+        private Node child(String segment) {
+            if (segments == null) {
+                segments = new String[4];
+                hashes = new int[4];
+                children = new Node[4];
+            }
+            int hash = segment.hashCode();
+            Node node = find(segment, 0, segment.length(), hash);
+            if (node == null) {
+                if ((size + 1) * 2 > segments.length) {
+                    resize();
+                }
+                node = new Node();
+                insert(segment, hash, node);
+            }
+            return node;
+        }
+
+        private void insert(String segment, int hash, Node node) {
+            int mask = segments.length - 1;
+            int i = hash & mask;
+            while (segments[i] != null) {
+                i = (i + 1) & mask;
+            }
+            segments[i] = segment;
+            hashes[i] = hash;
+            children[i] = node;
+            size++;
+        }
+
+        private void resize() {
+            String[] oldSegments = segments;
+            int[] oldHashes = hashes;
+            Node[] oldChildren = children;
+            segments = new String[oldSegments.length * 2];
+            hashes = new int[segments.length];
+            children = new Node[segments.length];
+            size = 0;
+            for (int i = 0; i < oldSegments.length; i++) {
+                if (oldSegments[i] != null) {
+                    insert(oldSegments[i], oldHashes[i], oldChildren[i]);
+                }
+            }
+        }
+
+        /**
+         * 按 path 中 [start, end) 的路径段查找子节点，不截取字符串
+         */
+        private Node find(String path, int start, int end, int hash) {
+            if (segments == null) {
+                return null;
+            }
+            int length = end - start;
+            int mask = segments.length - 1;
+            for (int i = hash & mask; segments[i] != null; i = (i + 1) & mask) {
+                String segment = segments[i];
+                if (hashes[i] == hash && segment.length() == length
+                        && path.regionMatches(start, segment, 0, length)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private static int hash(String path, int start, int end) {
+            // 与 String.hashCode 一致
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + path.charAt(i);
+            }
+            return h;
+        }
+
+        private boolean matches(String path) {
+            Node node = this;
+            int length = path.length();
+            int start = 1;
+            while (true) {
+                if (node.prefix) {
+                    return true;
+                }
+                int end = path.indexOf(PATH_SEPARATOR, start);
+                if (end == -1) {
+                    end = length;
+                }
+                if (node.oneDepth && end == length) {
+                    return true;
+                }
+                node = node.find(path, start, end, hash(path, start, end));
+                if (node == null) {
+                    return false;
+                }
+                if (end == length) {
+                    return node.exact || node.prefix || node.oneDepth;
+                }
+                start = end + 1;
+            }
+        }
+    }
+}
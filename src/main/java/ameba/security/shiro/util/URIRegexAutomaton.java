@@ -0,0 +1,686 @@
+package ameba.security.shiro.util;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 将多个 {uri regex} 规则合并编译为一个 Thompson NFA
+ * <br>
+ * 按输入长度线性匹配，不回溯，所有规则一次扫描完成，并返回第一个匹配的规则。
+ * 仅支持正则的常用子集：字面量、.、字符类、\d \w \s 等转义、\Q...\E、
+ * 分组、(?:...)、|、* + ? {n,m}（含非贪婪写法）；
+ * 反向引用、环视、边界匹配、占有量词等无法线性匹配的写法在编译时直接拒绝。
+ *
+ * @author icode
+ */
+public class URIRegexAutomaton {
+    public static final int MAX_STATES = 10000;
+
+    private static final int CHAR = 0;
+    private static final int SPLIT = 1;
+    private static final int MATCH = 2;
+    private static final int MAX_CODE_POINT = Character.MAX_CODE_POINT;
+    private static final int[] EMPTY_OUTS = new int[0];
+
+    private final List<URIMatcher> matchers;
+    private final int[] types;
+    private final int[][] ranges;
+    private final int[][] outs;
+    private final int[] rules;
+    private final int start;
+    /**
+     * 每个线程复用的匹配状态，避免每次匹配分配状态数组
+     */
+    private final ThreadLocal<Scratch> scratch;
+
+    private URIRegexAutomaton(List<URIMatcher> matchers, Builder builder, int start) {
+        this.matchers = matchers;
+        int size = builder.types.size();
+        this.types = new int[size];
+        this.ranges = new int[size][];
+        this.outs = new int[size][];
+        this.rules = new int[size];
+        for (int i = 0; i < size; i++) {
+            types[i] = builder.types.get(i);
+            ranges[i] = builder.ranges.get(i);
+            outs[i] = builder.outs.get(i);
+            rules[i] = builder.rules.get(i);
+        }
+        this.start = start;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(size));
+    }
+
+    /**
+     * 编译规则，规则必须为不带查询参数的正则规则
+     *
+     * @param matchers 正则规则
+     * @return 合并后的自动机
+     * @throws IllegalArgumentException 规则包含不支持的写法或状态数过多
+     */
+    public static URIRegexAutomaton compile(Collection<URIMatcher> matchers) {
+        List<URIMatcher> list = ImmutableList.copyOf(matchers);
+        Builder builder = new Builder();
+        int[] starts = new int[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            URIMatcher matcher = list.get(i);
+            if (!matcher.isUriRegex() || matcher.hasQuery()) {
+                throw new IllegalArgumentException("Not a uri regex rule: " + matcher.getUri());
+            }
+            Node node = new Parser(matcher.getUriPattern().pattern(), matcher.getUri()).parse();
+            int match = builder.add(MATCH, null, EMPTY_OUTS, i);
+            starts[i] = builder.compile(node, match, matcher.getUri());
+        }
+        int start = builder.add(SPLIT, null, starts, -1);
+        return new URIRegexAutomaton(list, builder, start);
+    }
+
+    public List<URIMatcher> getMatchers() {
+        return matchers;
+    }
+
+    public int getStateCount() {
+        return types.length;
+    }
+
+    /**
+     * @param path   已解码的请求路径
+     * @param method 请求方法
+     * @return 第一个匹配的规则，没有匹配时返回 null
+     */
+    public URIMatcher find(String path, String method) {
+        int index = match(path, method);
+        return index < 0 ? null : matchers.get(index);
+    }
+
+    /**
+     * @param path   已解码的请求路径
+     * @param method 请求方法
+     * @return 第一个匹配的规则下标，没有匹配时返回 -1
+     */
+    public int match(String path, String method) {
+        Scratch scratch = this.scratch.get();
+        int[] current = scratch.current;
+        int[] next = scratch.next;
+        int[] marks = scratch.marks;
+        int[] stack = scratch.stack;
+        // 标记按代递增，不需要在每次匹配前清空
+        int generation = scratch.nextGeneration(path.length() + 2);
+        int currentSize = addState(current, 0, start, marks, generation, stack);
+
+        for (int i = 0; i < path.length() && currentSize > 0; ) {
+            int c = path.codePointAt(i);
+            i += Character.charCount(c);
+            generation++;
+            int nextSize = 0;
+            for (int j = 0; j < currentSize; j++) {
+                int state = current[j];
+                if (types[state] == CHAR && contains(ranges[state], c)) {
+                    nextSize = addState(next, nextSize, outs[state][0], marks, generation, stack);
+                }
+            }
+            int[] swap = current;
+            current = next;
+            next = swap;
+            currentSize = nextSize;
+        }
+
+        int matched = -1;
+        for (int j = 0; j < currentSize; j++) {
+            int state = current[j];
+            if (types[state] == MATCH) {
+                int rule = rules[state];
+                if ((matched < 0 || rule < matched) && matchers.get(rule).isMethodAllowed(method)) {
+                    matched = rule;
+                }
+            }
+        }
+        return matched;
+    }
+
+    private int addState(int[] list, int size, int state, int[] marks, int generation, int[] stack) {
+        if (marks[state] == generation) {
+            return size;
+        }
+        marks[state] = generation;
+        int top = 0;
+        stack[top++] = state;
+        while (top > 0) {
+            int s = stack[--top];
+            if (types[s] == SPLIT) {
+                for (int o : outs[s]) {
+                    if (marks[o] != generation) {
+                        marks[o] = generation;
+                        stack[top++] = o;
+                    }
+                }
+            } else {
+                list[size++] = s;
+            }
+        }
+        return size;
+    }
+
+    private static boolean contains(int[] ranges, int c) {
+        int low = 0;
+        int high = ranges.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (c < ranges[mid * 2]) {
+                high = mid - 1;
+            } else if (c > ranges[mid * 2 + 1]) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Scratch {
+        private final int[] current;
+        private final int[] next;
+        private final int[] marks;
+        private final int[] stack;
+        private int generation;
+
+        private Scratch(int size) {
+            this.current = new int[size];
+            this.next = new int[size];
+            this.marks = new int[size];
+            this.stack = new int[size];
+        }
+
+        /**
+         * @param count 本次匹配最多使用的代数
+         * @return 本次匹配的起始代
+         */
+        private int nextGeneration(int count) {
+            if (generation > Integer.MAX_VALUE - count) {
+                Arrays.fill(marks, 0);
+                generation = 0;
+            }
+            int first = generation + 1;
+            generation += count;
+            return first;
+        }
+    }
+
+    private interface Node {
+    }
+
+    private static final class CharNode implements Node {
+        private final int[] ranges;
+
+        private CharNode(int[] ranges) {
+            this.ranges = ranges;
+        }
+    }
+
+    private static final class SeqNode implements Node {
+        private final List<Node> nodes;
+
+        private SeqNode(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+    }
+
+    private static final class AltNode implements Node {
+        private final List<Node> nodes;
+
+        private AltNode(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+    }
+
+    private static final class RepeatNode implements Node {
+        private final Node node;
+        private final int min;
+        /**
+         * -1 表示不限
+         */
+        private final int max;
+
+        private RepeatNode(Node node, int min, int max) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    private static final class Builder {
+        private final List<Integer> types = Lists.newArrayList();
+        private final List<int[]> ranges = Lists.newArrayList();
+        private final List<int[]> outs = Lists.newArrayList();
+        private final List<Integer> rules = Lists.newArrayList();
+
+        private int add(int type, int[] range, int[] out, int rule) {
+            types.add(type);
+            ranges.add(range);
+            outs.add(out);
+            rules.add(rule);
+            return types.size() - 1;
+        }
+
+        /**
+         * 反向构造，返回匹配 node 后转到 next 的起始状态
+         */
+        private int compile(Node node, int next, String rule) {
+            if (types.size() > MAX_STATES) {
+                throw new IllegalArgumentException("Uri regex rule is too large: " + rule);
+            }
+            if (node instanceof CharNode) {
+                return add(CHAR, ((CharNode) node).ranges, new int[]{next}, -1);
+            } else if (node instanceof SeqNode) {
+                List<Node> nodes = ((SeqNode) node).nodes;
+                for (int i = nodes.size() - 1; i >= 0; i--) {
+                    next = compile(nodes.get(i), next, rule);
+                }
+                return next;
+            } else if (node instanceof AltNode) {
+                List<Node> nodes = ((AltNode) node).nodes;
+                int[] starts = new int[nodes.size()];
+                for (int i = 0; i < starts.length; i++) {
+                    starts[i] = compile(nodes.get(i), next, rule);
+                }
+                return add(SPLIT, null, starts, -1);
+            } else {
+                RepeatNode repeat = (RepeatNode) node;
+                int current = next;
+                if (repeat.max < 0) {
+                    int loop = add(SPLIT, null, new int[]{-1, next}, -1);
+                    outs.get(loop)[0] = compile(repeat.node, loop, rule);
+                    current = loop;
+                } else {
+                    for (int i = repeat.min; i < repeat.max; i++) {
+                        current = add(SPLIT, null, new int[]{compile(repeat.node, current, rule), next}, -1);
+                    }
+                }
+                for (int i = 0; i < repeat.min; i++) {
+                    current = compile(repeat.node, current, rule);
+                }
+                return current;
+            }
+        }
+    }
+
+    private static final class Parser {
+        private static final int[] DIGIT = {'0', '9'};
+        private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+        private static final int[] SPACE = {'\t', '\r', ' ', ' '};
+        private static final int[] DOT = negate(new int[]{'\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029});
+
+        private final String pattern;
+        private final String rule;
+        private int pos;
+
+        private Parser(String pattern, String rule) {
+            this.pattern = pattern;
+            this.rule = rule;
+        }
+
+        private static int[] negate(int[] ranges) {
+            List<Integer> result = Lists.newArrayList();
+            int from = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] > from) {
+                    result.add(from);
+                    result.add(ranges[i] - 1);
+                }
+                from = ranges[i + 1] + 1;
+            }
+            if (from <= MAX_CODE_POINT) {
+                result.add(from);
+                result.add(MAX_CODE_POINT);
+            }
+            return toArray(result);
+        }
+
+        private static int[] normalize(List<Integer> ranges) {
+            int count = ranges.size() / 2;
+            int[][] pairs = new int[count][];
+            for (int i = 0; i < count; i++) {
+                pairs[i] = new int[]{ranges.get(i * 2), ranges.get(i * 2 + 1)};
+            }
+            Arrays.sort(pairs, (a, b) -> Integer.compare(a[0], b[0]));
+            List<Integer> result = Lists.newArrayList();
+            for (int[] pair : pairs) {
+                int last = result.size() - 1;
+                if (last > 0 && pair[0] <= result.get(last) + 1) {
+                    result.set(last, Math.max(result.get(last), pair[1]));
+                } else {
+                    result.add(pair[0]);
+                    result.add(pair[1]);
+                }
+            }
+            return toArray(result);
+        }
+
+        private static int[] toArray(List<Integer> list) {
+            int[] array = new int[list.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = list.get(i);
+            }
+            return array;
+        }
+
+        private static void addAll(List<Integer> target, int[] ranges) {
+            for (int r : ranges) {
+                target.add(r);
+            }
+        }
+
+        private static Node literal(int c) {
+            return new CharNode(new int[]{c, c});
+        }
+
+        private IllegalArgumentException unsupported(String what) {
+            return new IllegalArgumentException("Unsupported " + what + " at index " + pos
+                    + " in uri regex rule: " + rule);
+        }
+
+        private boolean more() {
+            return pos < pattern.length();
+        }
+
+        private char peek() {
+            return pattern.charAt(pos);
+        }
+
+        private Node parse() {
+            Node node = parseAlt();
+            if (more()) {
+                throw unsupported("character '" + peek() + "'");
+            }
+            return node;
+        }
+
+        private Node parseAlt() {
+            List<Node> nodes = Lists.newArrayList(parseSeq());
+            while (more() && peek() == '|') {
+                pos++;
+                nodes.add(parseSeq());
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new AltNode(nodes);
+        }
+
+        private Node parseSeq() {
+            List<Node> nodes = Lists.newArrayList();
+            while (more() && peek() != '|' && peek() != ')') {
+                Node node = parseRepeat();
+                if (node != null) {
+                    nodes.add(node);
+                }
+            }
+            return new SeqNode(nodes);
+        }
+
+        private Node parseRepeat() {
+            Node node = parseAtom();
+            while (more()) {
+                char c = peek();
+                int min, max;
+                if (c == '*') {
+                    min = 0;
+                    max = -1;
+                    pos++;
+                } else if (c == '+') {
+                    min = 1;
+                    max = -1;
+                    pos++;
+                } else if (c == '?') {
+                    min = 0;
+                    max = 1;
+                    pos++;
+                } else if (c == '{') {
+                    int end = pattern.indexOf('}', pos);
+                    if (end == -1) {
+                        throw unsupported("repetition");
+                    }
+                    String[] bounds = pattern.substring(pos + 1, end).split(",", -1);
+                    try {
+                        min = Integer.parseInt(bounds[0].trim());
+                        if (bounds.length == 1) {
+                            max = min;
+                        } else if (bounds.length == 2) {
+                            max = bounds[1].trim().isEmpty() ? -1 : Integer.parseInt(bounds[1].trim());
+                        } else {
+                            throw unsupported("repetition");
+                        }
+                    } catch (NumberFormatException e) {
+                        throw unsupported("repetition");
+                    }
+                    pos = end + 1;
+                } else {
+                    break;
+                }
+                if (more() && peek() == '+') {
+                    throw unsupported("possessive quantifier");
+                }
+                if (more() && peek() == '?') {
+                    // 非贪婪与贪婪在整体匹配时结果一致
+                    pos++;
+                }
+                if (node == null) {
+                    throw unsupported("quantifier on anchor");
+                }
+                node = new RepeatNode(node, min, max);
+            }
+            return node;
+        }
+
+        private Node parseAtom() {
+            char c = peek();
+            switch (c) {
+                case '(':
+                    pos++;
+                    if (more() && peek() == '?') {
+                        if (pattern.startsWith("?:", pos)) {
+                            pos += 2;
+                        } else {
+                            throw unsupported("group construct");
+                        }
+                    }
+                    Node group = parseAlt();
+                    if (!more() || peek() != ')') {
+                        throw unsupported("unclosed group");
+                    }
+                    pos++;
+                    return group;
+                case '[':
+                    pos++;
+                    return new CharNode(parseClass());
+                case '.':
+                    pos++;
+                    return new CharNode(DOT);
+                case '^':
+                    // 规则生成的起始锚点
+                    if (pos == 0) {
+                        pos++;
+                        return null;
+                    }
+                    throw unsupported("anchor");
+                case '$':
+                    // 规则生成的结束锚点
+                    if (pos == pattern.length() - 1) {
+                        pos++;
+                        return null;
+                    }
+                    throw unsupported("anchor");
+                case '\\':
+                    pos++;
+                    return parseEscape();
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw unsupported("dangling quantifier");
+                default:
+                    int cp = pattern.codePointAt(pos);
+                    pos += Character.charCount(cp);
+                    return literal(cp);
+            }
+        }
+
+        private Node parseEscape() {
+            if (!more()) {
+                throw unsupported("trailing backslash");
+            }
+            char c = peek();
+            if (c == 'Q') {
+                pos++;
+                int end = pattern.indexOf("\\E", pos);
+                String quoted = pattern.substring(pos, end == -1 ? pattern.length() : end);
+                pos = end == -1 ? pattern.length() : end + 2;
+                List<Node> nodes = Lists.newArrayList();
+                for (int i = 0; i < quoted.length(); ) {
+                    int cp = quoted.codePointAt(i);
+                    i += Character.charCount(cp);
+                    nodes.add(literal(cp));
+                }
+                return new SeqNode(nodes);
+            }
+            int[] predefined = predefinedClass(c);
+            if (predefined != null) {
+                pos++;
+                return new CharNode(predefined);
+            }
+            return literal(parseEscapedChar());
+        }
+
+        private int[] predefinedClass(char c) {
+            switch (c) {
+                case 'd':
+                    return DIGIT;
+                case 'D':
+                    return negate(DIGIT);
+                case 'w':
+                    return WORD;
+                case 'W':
+                    return negate(WORD);
+                case 's':
+                    return SPACE;
+                case 'S':
+                    return negate(SPACE);
+                default:
+                    return null;
+            }
+        }
+
+        private int parseEscapedChar() {
+            char c = peek();
+            pos++;
+            switch (c) {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'a':
+                    return '\u0007';
+                case 'e':
+                    return '\u001B';
+                case 'x':
+                    if (more() && peek() == '{') {
+                        int end = pattern.indexOf('}', pos);
+                        if (end == -1) {
+                            throw unsupported("hex escape");
+                        }
+                        int cp = parseHex(pos + 1, end);
+                        pos = end + 1;
+                        return cp;
+                    }
+                    pos += 2;
+                    return parseHex(pos - 2, pos);
+                case 'u':
+                    pos += 4;
+                    return parseHex(pos - 4, pos);
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        pos--;
+                        throw unsupported("escape '\\" + c + "'");
+                    }
+                    return c;
+            }
+        }
+
+        private int parseHex(int from, int to) {
+            try {
+                return Integer.parseInt(pattern.substring(from, to), 16);
+            } catch (RuntimeException e) {
+                throw unsupported("hex escape");
+            }
+        }
+
+        private int[] parseClass() {
+            boolean negated = false;
+            if (more() && peek() == '^') {
+                negated = true;
+                pos++;
+            }
+            if (more() && peek() == ']') {
+                throw unsupported("empty character class");
+            }
+            List<Integer> ranges = Lists.newArrayList();
+            while (true) {
+                if (!more()) {
+                    throw unsupported("unclosed character class");
+                }
+                char c = peek();
+                if (c == ']') {
+                    pos++;
+                    break;
+                }
+                if (c == '[' || pattern.startsWith("&&", pos)) {
+                    throw unsupported("nested character class");
+                }
+                int from;
+                if (c == '\\') {
+                    pos++;
+                    if (!more()) {
+                        throw unsupported("trailing backslash");
+                    }
+                    int[] predefined = predefinedClass(peek());
+                    if (predefined != null) {
+                        pos++;
+                        addAll(ranges, predefined);
+                        continue;
+                    }
+                    from = parseEscapedChar();
+                } else {
+                    from = pattern.codePointAt(pos);
+                    pos += Character.charCount(from);
+                }
+                int to = from;
+                if (pos + 1 < pattern.length() && peek() == '-' && pattern.charAt(pos + 1) != ']') {
+                    pos++;
+                    if (peek() == '\\') {
+                        pos++;
+                        if (!more() || predefinedClass(peek()) != null) {
+                            throw unsupported("character range");
+                        }
+                        to = parseEscapedChar();
+                    } else if (peek() == '[') {
+                        throw unsupported("nested character class");
+                    } else {
+                        to = pattern.codePointAt(pos);
+                        pos += Character.charCount(to);
+                    }
+                    if (to < from) {
+                        throw unsupported("character range");
+                    }
+                }
+                ranges.add(from);
+                ranges.add(to);
+            }
+            int[] normalized = normalize(ranges);
+            return negated ? negate(normalized) : normalized;
+        }
+    }
+}
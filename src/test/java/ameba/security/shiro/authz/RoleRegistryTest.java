@@ -0,0 +1,33 @@
+package ameba.security.shiro.authz;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author icode
+ */
+public class RoleRegistryTest {
+
+    @Test
+    public void containsUsesRegisteredRoles() {
+        long[] bits = RoleRegistry.toBits(Lists.newArrayList("registry-admin", "registry-user"));
+        assertTrue(RoleRegistry.contains(bits, "registry-admin"));
+        assertTrue(RoleRegistry.contains(bits, "registry-user"));
+        assertFalse(RoleRegistry.contains(bits, null));
+    }
+
+    @Test
+    public void unknownRolesAreNotRegistered() {
+        long[] bits = RoleRegistry.toBits(Lists.newArrayList("registry-admin"));
+        int size = RoleRegistry.size();
+        for (int i = 0; i < 100; i++) {
+            assertFalse(RoleRegistry.contains(bits, "registry-unknown-" + i));
+        }
+        assertEquals(size, RoleRegistry.size());
+        assertEquals(-1, RoleRegistry.findId("registry-unknown-0"));
+    }
+}
@@ -0,0 +1,56 @@
+package ameba.security.shiro.authz.permission;
+
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author icode
+ */
+public class InterningPermissionResolverTest {
+
+    @Test
+    public void sameStringResolvesToSameInstance() {
+        InterningPermissionResolver resolver = new InterningPermissionResolver();
+        Permission first = resolver.resolvePermission("document:read:1");
+        Permission second = resolver.resolvePermission("document:read:1");
+        assertSame(first, second);
+        assertEquals(new WildcardPermission("document:read:1"), first);
+        assertNotSame(first, resolver.resolvePermission("document:read:2"));
+        assertEquals(2, resolver.getPoolSize());
+        assertEquals(1, resolver.getHitCount());
+        assertEquals(2, resolver.getMissCount());
+    }
+
+    @Test
+    public void resizeKeepsInstancesAndStats() {
+        InterningPermissionResolver resolver = new InterningPermissionResolver();
+        Permission permission = resolver.resolvePermission("document:read:1");
+        resolver.resolvePermission("document:read:1");
+
+        resolver.setMaxSize(100);
+        assertEquals(100, resolver.getMaxSize());
+        assertEquals(1, resolver.getPoolSize());
+        assertEquals(1, resolver.getHitCount());
+        assertEquals(1, resolver.getMissCount());
+
+        assertSame(permission, resolver.resolvePermission("document:read:1"));
+        assertEquals(2, resolver.getHitCount());
+    }
+
+    @Test
+    public void shrinkingEvictsOverflow() {
+        InterningPermissionResolver resolver = new InterningPermissionResolver();
+        for (int i = 0; i < 50; i++) {
+            resolver.resolvePermission("document:read:" + i);
+        }
+        resolver.setMaxSize(10);
+        assertTrue(resolver.getPoolSize() <= 10);
+        assertEquals(50, resolver.getMissCount());
+    }
+}
@@ -0,0 +1,58 @@
+package ameba.security.shiro.authz.permission;
+
+import org.junit.Test;
+
+import java.net.URI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author icode
+ */
+public class URIPermissionTest {
+
+    @Test
+    public void parsesStringFormOnce() {
+        URIPermission permission = new URIPermission("/a/b:GET");
+        assertEquals(URI.create("/a/b"), permission.getRequestUri());
+        assertEquals("/a/b", permission.getRequestPath());
+        assertEquals("GET", permission.getMethod());
+    }
+
+    @Test
+    public void impliesBothForms() {
+        URIPermission held = new URIPermission("/a/**:GET");
+        assertTrue(held.implies(new URIPermission("/a/b:GET")));
+        assertTrue(held.implies(new URIPermission(URI.create("/a/b"), "GET")));
+        assertFalse(held.implies(new URIPermission("/a/b:POST")));
+        assertFalse(held.implies(new URIPermission(URI.create("/b"), "GET")));
+    }
+
+    @Test
+    public void nullUriImpliesNothing() {
+        URIPermission permission = new URIPermission((String) null);
+        assertNull(permission.getRequestUri());
+        assertFalse(permission.implies(new URIPermission("/a:GET")));
+        assertFalse(new URIPermission("/**:GET").implies(permission));
+    }
+
+    @Test
+    public void unparsableUriIsOnlyHeld() {
+        URIPermission regex = new URIPermission("/a/{[a-z ]+}:GET");
+        assertNull(regex.getRequestUri());
+        assertFalse(new URIPermission("/**:GET").implies(regex));
+    }
+
+    @Test
+    public void requestFormHasValueEquality() {
+        URIPermission a = new URIPermission(URI.create("/a/b"), "GET");
+        URIPermission b = new URIPermission(URI.create("/a/b"), "GET");
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertFalse(a.equals(new URIPermission(URI.create("/a/b"), "POST")));
+        assertFalse(a.equals(new URIPermission("/a/b:GET")));
+    }
+}
@@ -0,0 +1,125 @@
+package ameba.security.shiro.benchmark;
+
+import ameba.security.shiro.authz.CompiledAuthorizationInfo;
+import ameba.security.shiro.authz.permission.URIPermission;
+import ameba.security.shiro.cache.CacheCodec;
+import ameba.security.shiro.cache.CompactCacheCodec;
+import ameba.security.shiro.cache.SerializationCodec;
+import com.google.common.collect.Sets;
+import org.apache.shiro.authc.SimpleAuthenticationInfo;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.SimpleAuthorizationInfo;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CompactCacheCodec 与 SerializationCodec 编解码的耗时、分配和编码后大小
+ * <br>
+ * 编码后的字节数在运行基准前输出。
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=ameba.security.shiro.benchmark.CacheCodecBenchmark
+ * </pre>
+ *
+ * @author icode
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class CacheCodecBenchmark {
+
+    private static final String[] CODECS = {"compact", "serialization"};
+    private static final String[] VALUES = {"authorization", "compiledAuthorization", "authentication"};
+
+    @Param({"compact", "serialization"})
+    public String codecName;
+    @Param({"authorization", "compiledAuthorization", "authentication"})
+    public String valueName;
+
+    private CacheCodec codec;
+    private Object value;
+    private byte[] encoded;
+
+    public static void main(String[] args) throws RunnerException {
+        for (String valueName : VALUES) {
+            for (String codecName : CODECS) {
+                System.out.println(valueName + " / " + codecName + ": "
+                        + codec(codecName).encode(value(valueName)).length + " bytes");
+            }
+        }
+        new Runner(new OptionsBuilder()
+                .include(CacheCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    private static CacheCodec codec(String name) {
+        return "compact".equals(name) ? new CompactCacheCodec() : new SerializationCodec();
+    }
+
+    private static Object value(String name) {
+        switch (name) {
+            case "authorization":
+                return authorizationInfo();
+            case "compiledAuthorization":
+                return new CompiledAuthorizationInfo(authorizationInfo());
+            case "authentication":
+                SimplePrincipalCollection principals = new SimplePrincipalCollection("alice", "jdbcRealm");
+                principals.add(42L, "jdbcRealm");
+                // SimpleByteSource 不支持 Java 序列化，不设置盐值
+                return new SimpleAuthenticationInfo(principals, "5f4dcc3b5aa765d61d8327deb882cf99");
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+
+    private static SimpleAuthorizationInfo authorizationInfo() {
+        SimpleAuthorizationInfo info = new SimpleAuthorizationInfo(Sets.newHashSet("admin", "user", "auditor"));
+        Set<String> permissions = Sets.newHashSet();
+        for (int i = 0; i < 20; i++) {
+            permissions.add("document:read,write:" + i);
+        }
+        info.setStringPermissions(permissions);
+        Set<Permission> objectPermissions = Sets.newHashSet();
+        for (int i = 0; i < 10; i++) {
+            objectPermissions.add(new WildcardPermission("printer:print:floor" + i));
+            objectPermissions.add(new URIPermission("/api/resource" + i + "/**:GET POST"));
+        }
+        info.setObjectPermissions(objectPermissions);
+        return info;
+    }
+
+    @Setup
+    public void setup() {
+        codec = codec(codecName);
+        value = value(valueName);
+        encoded = codec.encode(value);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(value);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return codec.decode(encoded);
+    }
+}
@@ -0,0 +1,118 @@
+package ameba.security.shiro.benchmark;
+
+import ameba.security.shiro.authz.permission.URIPermission;
+import ameba.security.shiro.util.URIMatcher;
+import ameba.security.shiro.util.URIMatcherIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * URIPermission 与 URIMatcher 匹配的耗时和分配
+ * <br>
+ * 使用 GC profiler 运行，gc.alloc.rate.norm 即每次操作分配的字节数，
+ * 前缀、单层、精确、按方法过滤的 URIMatcher 以及 URIMatcherIndex 的各项应为 0 B/op。
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=ameba.security.shiro.benchmark.URIPermissionBenchmark
+ * </pre>
+ *
+ * @author icode
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class URIPermissionBenchmark {
+
+    private URIPermission held;
+    private URIPermission stringTarget;
+    private URIPermission requestTarget;
+    private URIMatcher plainMatcher;
+    private URIMatcher oneDepthMatcher;
+    private URIMatcher exactMatcher;
+    private URIMatcher methodFilteredMatcher;
+    private URIMatcherIndex index;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(URIPermissionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        held = new URIPermission("/api/users/**:GET");
+        stringTarget = new URIPermission("/api/users/42/profile:GET");
+        requestTarget = new URIPermission(URI.create("/api/users/42/profile"), "GET");
+        plainMatcher = new URIMatcher("/api/users/**:GET");
+        oneDepthMatcher = new URIMatcher("/api/users/*:GET");
+        exactMatcher = new URIMatcher("/api/users/42/profile:GET");
+        methodFilteredMatcher = new URIMatcher("/api/users/**:POST PUT");
+        index = URIMatcherIndex.compile(Arrays.asList(
+                new URIMatcher("/api/orders/**:GET"),
+                new URIMatcher("/api/users/*:GET"),
+                new URIMatcher("/api/users/42/profile:GET"),
+                new URIMatcher("/api/users/**:POST PUT")));
+        held.getMatcher();
+    }
+
+    @Benchmark
+    public boolean impliesStringForm() {
+        return held.implies(stringTarget);
+    }
+
+    @Benchmark
+    public boolean impliesRequestForm() {
+        return held.implies(requestTarget);
+    }
+
+    @Benchmark
+    public boolean plainMatcher() {
+        return plainMatcher.matches("/api/users/42/profile", null, "GET");
+    }
+
+    @Benchmark
+    public boolean oneDepthMatcher() {
+        return oneDepthMatcher.matches("/api/users/42", null, "GET");
+    }
+
+    @Benchmark
+    public boolean exactMatcher() {
+        return exactMatcher.matches("/api/users/42/profile", null, "GET");
+    }
+
+    @Benchmark
+    public boolean methodFilteredMatcher() {
+        return methodFilteredMatcher.matches("/api/users/42/profile", null, "GET");
+    }
+
+    @Benchmark
+    public boolean indexExact() {
+        return index.matches("/api/users/42/profile", null, "GET");
+    }
+
+    @Benchmark
+    public boolean indexOneDepth() {
+        return index.matches("/api/users/42", null, "GET");
+    }
+
+    @Benchmark
+    public boolean indexMethodFiltered() {
+        return index.matches("/api/users/42/orders", null, "DELETE");
+    }
+}
@@ -0,0 +1,127 @@
+package ameba.security.shiro.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author icode
+ */
+public class BoundedMapTest {
+
+    private static void touch(BoundedMap<String, ?> map, String key, int times) {
+        for (int i = 0; i < times; i++) {
+            map.get(key);
+        }
+    }
+
+    @Test
+    public void rejectsColdKeyWhenFull() {
+        BoundedMap<String, Integer> map = new BoundedMap<>(new CacheSpec(2, 0, 0));
+        map.put("a", 1);
+        map.put("b", 2);
+        touch(map, "a", 5);
+        touch(map, "b", 5);
+
+        assertNull(map.put("c", 3));
+        assertNull(map.get("c"));
+        assertEquals(2, map.size());
+        assertEquals(1, map.getRejectionCount());
+        assertEquals(0, map.getEvictionCount());
+    }
+
+    @Test
+    public void admitsHotKeyByEvictingLeastRecentlyUsed() {
+        BoundedMap<String, Integer> map = new BoundedMap<>(new CacheSpec(3, 0, 0));
+        map.put("a", 1);
+        map.put("b", 2);
+        map.put("c", 3);
+        // a 变为最近使用，待淘汰的是 b
+        map.get("a");
+        touch(map, "d", 5);
+
+        map.put("d", 4);
+        assertEquals(3, map.size());
+        assertFalse(map.containsKey("b"));
+        assertEquals(Integer.valueOf(1), map.get("a"));
+        assertEquals(Integer.valueOf(3), map.get("c"));
+        assertEquals(Integer.valueOf(4), map.get("d"));
+        assertEquals(1, map.getEvictionCount());
+        assertEquals(0, map.getRejectionCount());
+    }
+
+    @Test
+    public void updatingExistingKeyIsAlwaysAccepted() {
+        BoundedMap<String, Integer> map = new BoundedMap<>(new CacheSpec(1, 0, 0));
+        map.put("a", 1);
+        assertEquals(Integer.valueOf(1), map.put("a", 2));
+        assertEquals(Integer.valueOf(2), map.get("a"));
+        assertEquals(0, map.getRejectionCount());
+    }
+
+    @Test
+    public void expiresAfterWrite() {
+        ClockedMap<String, Integer> map = new ClockedMap<>(new CacheSpec(0, 100, 0));
+        map.put("a", 1);
+        map.time = 50;
+        assertEquals(Integer.valueOf(1), map.get("a"));
+        map.time = 100;
+        assertNull(map.get("a"));
+        assertEquals(0, map.size());
+        assertEquals(1, map.getEvictionCount());
+    }
+
+    @Test
+    public void expiresAfterAccess() {
+        ClockedMap<String, Integer> map = new ClockedMap<>(new CacheSpec(0, 0, 100));
+        map.put("a", 1);
+        map.put("b", 2);
+        map.time = 60;
+        assertEquals(Integer.valueOf(1), map.get("a"));
+        map.time = 150;
+        // a 在 60 时被访问过，b 自写入后没有访问
+        assertEquals(Integer.valueOf(1), map.get("a"));
+        assertNull(map.get("b"));
+        map.time = 250;
+        map.cleanUp();
+        assertEquals(0, map.size());
+        assertEquals(2, map.getEvictionCount());
+    }
+
+    @Test
+    public void splitsSegmentsByCapacity() {
+        assertEquals(1, new StripedBoundedMap<>(new CacheSpec(100, 0, 0)).getSegmentCount());
+        assertEquals(2, new StripedBoundedMap<>(new CacheSpec(128, 0, 0)).getSegmentCount());
+        assertEquals(16, new StripedBoundedMap<>(new CacheSpec(1024, 0, 0)).getSegmentCount());
+        assertEquals(16, new StripedBoundedMap<>(new CacheSpec(0, 1000, 0)).getSegmentCount());
+    }
+
+    @Test
+    public void stripedMapStaysWithinCapacity() {
+        StripedBoundedMap<Integer, Integer> map = new StripedBoundedMap<>(new CacheSpec(1024, 0, 0));
+        for (int i = 0; i < 10000; i++) {
+            map.put(i, i);
+        }
+        assertTrue(map.size() <= 1024);
+        assertTrue(map.getRejectionCount() + map.getEvictionCount() >= 10000 - 1024);
+        for (Integer key : map.keySet()) {
+            assertEquals(key, map.get(key));
+        }
+    }
+
+    private static final class ClockedMap<K, V> extends BoundedMap<K, V> {
+        private long time;
+
+        private ClockedMap(CacheSpec spec) {
+            super(spec);
+        }
+
+        @Override
+        protected long now() {
+            return time;
+        }
+    }
+}
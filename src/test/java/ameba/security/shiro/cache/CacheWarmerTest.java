@@ -0,0 +1,82 @@
+package ameba.security.shiro.cache;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author icode
+ */
+public class CacheWarmerTest {
+
+    private static PrincipalCollection principals(String name) {
+        return new SimplePrincipalCollection(name, "realm");
+    }
+
+    @Test
+    public void disabledWithoutFile() {
+        Map<String, Object> properties = Maps.newHashMap();
+        properties.put(CacheWarmer.ENABLED_KEY, "true");
+        CacheWarmer warmer = CacheWarmer.create(null, properties);
+        assertFalse(warmer.isEnabled());
+        warmer.record(principals("alice"));
+        assertTrue(warmer.getTopPrincipals().isEmpty());
+    }
+
+    @Test
+    public void latePrincipalsReachTop() throws Exception {
+        Path file = Files.createTempFile("warmer", ".bin");
+        CacheWarmer warmer = new CacheWarmer(null, true, file, 2, 1, 1000);
+        // 早期大量不同身份各访问一次
+        for (int i = 0; i < 1000; i++) {
+            warmer.record(principals("early" + i));
+        }
+        for (int i = 0; i < 10; i++) {
+            warmer.record(principals("late1"));
+            warmer.record(principals("late2"));
+        }
+        List<PrincipalCollection> top = warmer.getTopPrincipals();
+        assertEquals(2, top.size());
+        assertTrue(top.contains(principals("late1")));
+        assertTrue(top.contains(principals("late2")));
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void snapshotRoundTripsWithoutSerialization() throws Exception {
+        Path file = Files.createTempFile("warmer", ".bin");
+        CacheWarmer warmer = new CacheWarmer(null, true, file, 10, 1, 1000);
+        warmer.record(principals("alice"));
+        warmer.saveSnapshot();
+        assertEquals(Collections.singletonList(principals("alice")), warmer.loadSnapshot());
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void rejectsSerializedSnapshot() throws Exception {
+        Path file = Files.createTempFile("warmer", ".bin");
+        List<PrincipalCollection> list = new ArrayList<>();
+        list.add(principals("alice"));
+        Files.write(file, new SerializationCodec().encode(list));
+        CacheWarmer warmer = new CacheWarmer(null, true, file, 10, 1, 1000);
+        assertTrue(warmer.loadSnapshot().isEmpty());
+
+        // 紧凑格式中嵌入的 Java 序列化数据同样拒绝
+        Files.write(file, new CompactCacheCodec().encode(Lists.newArrayList(new java.util.Date())));
+        assertTrue(warmer.loadSnapshot().isEmpty());
+        Files.deleteIfExists(file);
+    }
+}
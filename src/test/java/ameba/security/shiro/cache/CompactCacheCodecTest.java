@@ -0,0 +1,121 @@
+package ameba.security.shiro.cache;
+
+import ameba.security.shiro.authz.CompiledAuthorizationInfo;
+import ameba.security.shiro.authz.permission.URIPermission;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.shiro.authc.SimpleAuthenticationInfo;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.SimpleAuthorizationInfo;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.apache.shiro.util.SimpleByteSource;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author icode
+ */
+public class CompactCacheCodecTest {
+
+    private final CompactCacheCodec codec = new CompactCacheCodec();
+
+    @SuppressWarnings("unchecked")
+    private <T> T roundTrip(Object value) {
+        return (T) codec.decode(codec.encode(value));
+    }
+
+    @Test
+    public void roundTripsPlainValues() {
+        assertEquals("text", roundTrip("text"));
+        assertEquals(-42L, (long) roundTrip(-42L));
+        assertEquals(7, (int) roundTrip(7));
+        assertEquals(Boolean.TRUE, roundTrip(true));
+        assertArrayEquals(new byte[]{1, 2, 3}, this.<byte[]>roundTrip(new byte[]{1, 2, 3}));
+        assertArrayEquals("pwd".toCharArray(), this.<char[]>roundTrip("pwd".toCharArray()));
+        assertEquals(Lists.newArrayList("a", null, 1L), roundTrip(Lists.newArrayList("a", null, 1L)));
+        assertEquals(Sets.newHashSet("a", "b"), roundTrip(Sets.newHashSet("a", "b")));
+        Map<String, Object> map = Maps.newHashMap();
+        map.put("k", Lists.newArrayList("v"));
+        assertEquals(map, roundTrip(map));
+    }
+
+    @Test
+    public void roundTripsAuthorizationInfo() {
+        SimpleAuthorizationInfo info = new SimpleAuthorizationInfo(Sets.newHashSet("admin", "user"));
+        info.setStringPermissions(Sets.newHashSet("doc:read,write:1"));
+        info.setObjectPermissions(Sets.<Permission>newHashSet(
+                new WildcardPermission("printer:print"),
+                new URIPermission("/api/users/*:GET")));
+
+        SimpleAuthorizationInfo decoded = roundTrip(info);
+        assertEquals(info.getRoles(), decoded.getRoles());
+        assertEquals(info.getStringPermissions(), decoded.getStringPermissions());
+        assertEquals(2, decoded.getObjectPermissions().size());
+        assertTrue(implies(decoded, new WildcardPermission("printer:print")));
+        assertTrue(implies(decoded, new URIPermission(URI.create("/api/users/1"), "GET")));
+
+        CompiledAuthorizationInfo compiled = roundTrip(new CompiledAuthorizationInfo(info));
+        assertEquals(info.getRoles(), compiled.getRoles());
+        assertEquals(info.getStringPermissions(), compiled.getDelegate().getStringPermissions());
+    }
+
+    private static boolean implies(SimpleAuthorizationInfo info, Permission permission) {
+        for (Permission p : info.getObjectPermissions()) {
+            if (p.implies(permission)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void roundTripsAuthenticationInfo() {
+        SimplePrincipalCollection principals = new SimplePrincipalCollection("alice", "realmA");
+        principals.add(10L, "realmB");
+        SimpleAuthenticationInfo info = new SimpleAuthenticationInfo(principals, "secret".toCharArray(),
+                new SimpleByteSource(new byte[]{9, 8}));
+
+        SimpleAuthenticationInfo decoded = roundTrip(info);
+        assertEquals(principals, decoded.getPrincipals());
+        assertArrayEquals("secret".toCharArray(), (char[]) decoded.getCredentials());
+        assertArrayEquals(new byte[]{9, 8}, decoded.getCredentialsSalt().getBytes());
+    }
+
+    @Test
+    public void roundTripsCacheEntryAndSerializableFallback() {
+        Date date = new Date(1234L);
+        CacheEntry<String, Date> entry = roundTrip(new CacheEntry<>("k", date));
+        assertEquals("k", entry.getKey());
+        assertEquals(date, entry.getValue());
+    }
+
+    @Test
+    public void readsLegacySerializedValues() {
+        Map<String, String> legacy = Maps.newHashMap();
+        legacy.put("k", "v");
+        byte[] bytes = new SerializationCodec().encode(legacy);
+        assertEquals(legacy, codec.decode(bytes));
+
+        AmebaCacheStore store = new AmebaCacheStore(codec);
+        assertEquals(legacy, store.decode(bytes));
+        // 旧版本由 ameba.cache 直接保存的对象原样返回
+        assertEquals(legacy, store.decode(legacy));
+        assertEquals(legacy, store.decode(store.encode(legacy)));
+    }
+
+    @Test
+    public void compactIsSmallerThanSerialization() {
+        SimpleAuthorizationInfo info = new SimpleAuthorizationInfo(Sets.newHashSet("admin", "user"));
+        info.setStringPermissions(Sets.newHashSet("doc:read", "doc:write"));
+        assertTrue(codec.encode(info).length < new SerializationCodec().encode(info).length / 2);
+    }
+}
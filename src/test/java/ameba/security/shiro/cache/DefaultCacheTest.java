@@ -0,0 +1,99 @@
+package ameba.security.shiro.cache;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author icode
+ */
+public class DefaultCacheTest {
+
+    private static final int THREADS = 64;
+    private static final int OPERATIONS = 200;
+
+    @Test
+    public void concurrentWritersKeepConsistentSnapshot() throws Exception {
+        CountingStore store = new CountingStore();
+        DefaultCache<String, Integer> cache = new DefaultCache<>("stress", CacheSpec.UNBOUNDED, store);
+        runWriters(cache);
+
+        int expected = THREADS * OPERATIONS / 2;
+        assertEquals(expected, cache.size());
+        // 默认同步写回，修改返回时已写入后端
+        Map<String, Integer> flushed = store.get(DefaultCache.CACHE_PRE_KEY + "stress");
+        assertEquals(expected, flushed.size());
+        assertEquals(Integer.valueOf(0), flushed.get("0:0"));
+        assertNull(flushed.get("0:1"));
+
+        DefaultCache<String, Integer> reloaded = new DefaultCache<>("stress", CacheSpec.UNBOUNDED, store);
+        assertEquals(expected, reloaded.size());
+    }
+
+    @Test
+    public void delayedFlushCoalescesWrites() throws Exception {
+        CountingStore store = new CountingStore();
+        DefaultCache<String, Integer> cache = new DefaultCache<>("delayed", CacheSpec.UNBOUNDED, store,
+                TimeUnit.MINUTES.toMillis(10));
+        runWriters(cache);
+        assertEquals(0, store.writes.get());
+
+        cache.flush();
+        assertEquals(1, store.writes.get());
+        Map<String, Integer> flushed = store.get(DefaultCache.CACHE_PRE_KEY + "delayed");
+        assertEquals(THREADS * OPERATIONS / 2, flushed.size());
+
+        cache.put("k", 1);
+        cache.destroy();
+        assertEquals(2, store.writes.get());
+        assertEquals(Integer.valueOf(1), store.<Map<String, Integer>>get(DefaultCache.CACHE_PRE_KEY + "delayed").get("k"));
+    }
+
+    private static void runWriters(DefaultCache<String, Integer> cache) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        String key = thread + ":" + i;
+                        cache.put(key, i);
+                        if (i % 2 == 1) {
+                            cache.remove(key);
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
+
+    private static final class CountingStore extends MemoryCacheStore {
+        private final AtomicInteger writes = new AtomicInteger();
+
+        @Override
+        public void set(String key, Object value) {
+            writes.incrementAndGet();
+            super.set(key, value);
+        }
+    }
+}
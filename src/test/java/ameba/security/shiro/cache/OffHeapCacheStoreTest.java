@@ -0,0 +1,49 @@
+package ameba.security.shiro.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author icode
+ */
+public class OffHeapCacheStoreTest {
+
+    @Test
+    public void storesEntriesLargerThanSlab() {
+        OffHeapCacheStore store = new OffHeapCacheStore(new CompactCacheCodec(), 64 * 1024, 1024, 1);
+        byte[] large = new byte[8 * 1024];
+        large[100] = 7;
+        store.set("large", large);
+        store.set("small", "v");
+        // 堆内解码缓存只保存一个对象，读取 large 需要重新解码
+        assertEquals("v", store.get("small"));
+        assertArrayEquals(large, store.<byte[]>get("large"));
+        assertEquals(0, store.getEvictionCount());
+
+        store.delete("large");
+        assertNull(store.get("large"));
+        assertEquals(1024, store.getBytesAllocated());
+    }
+
+    @Test
+    public void oversizeEntriesShareCapacity() {
+        OffHeapCacheStore store = new OffHeapCacheStore(new CompactCacheCodec(), 8 * 1024, 1024, 1);
+        for (int i = 0; i < 4; i++) {
+            store.set("large" + i, new byte[3 * 1024]);
+        }
+        assertEquals(2, store.getEntryCount());
+        assertEquals(2, store.getEvictionCount());
+        assertEquals(true, store.getBytesAllocated() <= 8 * 1024);
+    }
+
+    @Test
+    public void entryLargerThanCapacityIsNotCached() {
+        OffHeapCacheStore store = new OffHeapCacheStore(new CompactCacheCodec(), 4 * 1024, 1024, 1);
+        store.set("huge", new byte[8 * 1024]);
+        assertNull(store.get("huge"));
+        assertEquals(1, store.getEvictionCount());
+    }
+}
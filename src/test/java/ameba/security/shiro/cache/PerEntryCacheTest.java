@@ -0,0 +1,127 @@
+package ameba.security.shiro.cache;
+
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author icode
+ */
+public class PerEntryCacheTest {
+
+    @Test
+    public void keysAreSharedBetweenNodes() {
+        MemoryCacheStore store = new MemoryCacheStore();
+        PerEntryCache<String, String> a = new PerEntryCache<>("shared", store);
+        PerEntryCache<String, String> b = new PerEntryCache<>("shared", store);
+        a.put("k1", "v1");
+        b.put("k2", "v2");
+        assertEquals(Sets.newHashSet("k1", "k2"), a.keys());
+        assertEquals(Sets.newHashSet("k1", "k2"), b.keys());
+        assertEquals("v1", b.get("k1"));
+
+        b.remove("k1");
+        assertEquals(Sets.newHashSet("k2"), a.keys());
+        assertEquals(1, a.size());
+        assertNull(a.get("k1"));
+
+        a.clear();
+        assertEquals(0, b.size());
+        assertNull(b.get("k2"));
+    }
+
+    @Test
+    public void newKeyWritesOnlyItsBucket() {
+        CountingStore store = new CountingStore();
+        PerEntryCache<String, String> cache = new PerEntryCache<>("payload", store, 16);
+        for (int i = 0; i < 1600; i++) {
+            cache.put("k" + i, "v");
+        }
+        // 每次新增只写入所在的集合，集合大小约为索引的 1/16
+        assertTrue("largest bucket: " + store.largestCollection.get(), store.largestCollection.get() < 1600 / 4);
+        // 已存在的 key 只写条目
+        int writes = store.writes.get();
+        cache.put("k1", "v2");
+        assertEquals(writes + 1, store.writes.get());
+        assertEquals(1600, cache.size());
+    }
+
+    @Test
+    public void concurrentIndexesDoNotLoseKeys() throws Exception {
+        MemoryCacheStore store = new MemoryCacheStore();
+        KeyIndex<Integer> a = new KeyIndex<>("concurrent", store, 4);
+        KeyIndex<Integer> b = new KeyIndex<>("concurrent", store, 4);
+        int threads = 16;
+        int perThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            KeyIndex<Integer> index = t % 2 == 0 ? a : b;
+            int base = t * perThread;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        index.add(base + i);
+                        if (i % 5 == 0) {
+                            index.remove(base + i);
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        int expected = threads * perThread * 4 / 5;
+        assertEquals(expected, a.size());
+        assertEquals(a.keys(), b.keys());
+        assertTrue(b.keys().contains(1));
+        assertTrue(!b.keys().contains(0));
+        // 锁全部释放，只剩 4 个集合
+        assertEquals(4, store.size());
+    }
+
+    @Test
+    public void legacyIndexIsMigrated() {
+        MemoryCacheStore store = new MemoryCacheStore();
+        String base = DefaultCache.CACHE_PRE_KEY + "legacy";
+        store.set(base + "#keys", Sets.newHashSet("old1", "old2"));
+        PerEntryCache<String, String> cache = new PerEntryCache<>("legacy", store);
+        cache.put("new", "v");
+        assertEquals(Sets.newHashSet("old1", "old2", "new"), cache.keys());
+        assertNull(store.get(base + "#keys"));
+    }
+
+    private static final class CountingStore extends MemoryCacheStore {
+        private final AtomicInteger writes = new AtomicInteger();
+        private final AtomicInteger largestCollection = new AtomicInteger();
+
+        @Override
+        public void set(String key, Object value) {
+            writes.incrementAndGet();
+            if (value instanceof Collection) {
+                largestCollection.accumulateAndGet(((Collection<?>) value).size(), Math::max);
+            }
+            super.set(key, value);
+        }
+    }
+}
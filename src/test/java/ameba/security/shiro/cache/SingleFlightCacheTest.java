@@ -0,0 +1,135 @@
+package ameba.security.shiro.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author icode
+ */
+public class SingleFlightCacheTest {
+
+    private static SingleFlightCache<String, String> newCache() {
+        return new SingleFlightCache<>(new LocalCache<>(CacheSpec.UNBOUNDED));
+    }
+
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        SingleFlightCache<String, String> cache = newCache();
+        int threads = 8;
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<String>> results = new CopyOnWriteArrayList<>();
+        results.add(executor.submit(() -> cache.get("k", () -> {
+            calls.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return "v";
+        })));
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        for (int i = 1; i < threads; i++) {
+            results.add(executor.submit(() -> cache.get("k", () -> {
+                calls.incrementAndGet();
+                return "other";
+            })));
+        }
+        // 等待其他线程进入等待
+        long deadline = System.currentTimeMillis() + 10000;
+        while (cache.getDeduplicatedCount() < threads - 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (Future<String> result : results) {
+            assertEquals("v", result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.getLoadCount());
+        assertEquals(threads - 1, cache.getDeduplicatedCount());
+        assertEquals("v", cache.get("k"));
+    }
+
+    @Test
+    public void failureIsPropagatedToWaiters() throws Exception {
+        SingleFlightCache<String, String> cache = newCache();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<String> loader = executor.submit(() -> cache.get("k", () -> {
+            loading.countDown();
+            release.await();
+            throw new IllegalStateException("db down");
+        }));
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        Future<String> waiter = executor.submit(() -> cache.get("k", () -> "unused"));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (cache.getDeduplicatedCount() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (Future<String> result : Arrays.asList(loader, waiter)) {
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                fail("expected failure");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+                assertEquals("db down", e.getCause().getMessage());
+            }
+        }
+        executor.shutdown();
+        assertEquals(1, cache.getLoadFailureCount());
+        assertNull(cache.get("k"));
+        // 失败后下一次调用重新加载
+        assertEquals("v", cache.get("k", () -> "v"));
+    }
+
+    @Test
+    public void removeDuringLoadDoesNotCacheStaleValue() throws Exception {
+        SingleFlightCache<String, String> cache = newCache();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<String> stale = executor.submit(() -> cache.get("k", () -> {
+            loading.countDown();
+            release.await();
+            return "stale";
+        }));
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        cache.remove("k");
+        release.countDown();
+        assertEquals("stale", stale.get(10, TimeUnit.SECONDS));
+        assertNull(cache.get("k"));
+        assertEquals("fresh", cache.get("k", () -> "fresh"));
+
+        // clear 同样使进行中的加载失效
+        CountDownLatch loading2 = new CountDownLatch(1);
+        CountDownLatch release2 = new CountDownLatch(1);
+        Future<String> stale2 = executor.submit(() -> cache.get("k2", () -> {
+            loading2.countDown();
+            release2.await();
+            return "stale";
+        }));
+        assertTrue(loading2.await(10, TimeUnit.SECONDS));
+        cache.clear();
+        release2.countDown();
+        stale2.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertNull(cache.get("k2"));
+    }
+}
@@ -0,0 +1,84 @@
+package ameba.security.shiro.cache;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author icode
+ */
+public class TwoLevelCacheTest {
+
+    @Test
+    public void versionChangeInvalidatesOtherInstances() {
+        MemoryCacheStore store = new MemoryCacheStore();
+        TwoLevelCache<String, String> a = new TwoLevelCache<>("shared", store, CacheSpec.UNBOUNDED, 0);
+        TwoLevelCache<String, String> b = new TwoLevelCache<>("shared", store, CacheSpec.UNBOUNDED, 0);
+
+        a.put("k", "v1");
+        assertEquals("v1", b.get("k"));
+        assertEquals(1, b.getLocalSize());
+
+        a.put("k", "v2");
+        assertEquals("v2", b.get("k"));
+
+        a.remove("k");
+        assertNull(b.get("k"));
+        assertEquals(0, b.getLocalSize());
+    }
+
+    @Test
+    public void localHitWithinStalenessSkipsStore() {
+        CountingStore store = new CountingStore();
+        TwoLevelCache<String, String> a = new TwoLevelCache<>("stale", store, CacheSpec.UNBOUNDED, 1000);
+        ClockedCache<String, String> b = new ClockedCache<>("stale", store, 1000);
+
+        a.put("k", "v1");
+        assertEquals("v1", b.get("k"));
+
+        a.put("k", "v2");
+        int reads = store.reads.get();
+        b.time = 999;
+        // 窗口内直接返回 L1，不读取后端，可能读到旧值
+        assertEquals("v1", b.get("k"));
+        assertEquals(reads, store.reads.get());
+
+        b.time = 1000;
+        assertEquals("v2", b.get("k"));
+
+        // 版本未变化时只校验版本号，并重新开始计算窗口
+        b.time = 2000;
+        reads = store.reads.get();
+        assertEquals("v2", b.get("k"));
+        assertEquals(reads + 1, store.reads.get());
+        b.time = 2999;
+        assertEquals("v2", b.get("k"));
+        assertEquals(reads + 1, store.reads.get());
+    }
+
+    private static final class ClockedCache<K, V> extends TwoLevelCache<K, V> {
+        private long time;
+
+        private ClockedCache(String name, CacheStore store, long stalenessMillis) {
+            super(name, store, CacheSpec.UNBOUNDED, stalenessMillis);
+        }
+
+        @Override
+        protected long now() {
+            return time;
+        }
+    }
+
+    private static final class CountingStore extends MemoryCacheStore {
+        private final AtomicInteger reads = new AtomicInteger();
+
+        @Override
+        public <T> T get(String key) {
+            reads.incrementAndGet();
+            return super.get(key);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package ameba.security.shiro.cache;
+
+import org.apache.shiro.cache.CacheException;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * @author icode
+ */
+public class WriteBehindCacheStoreTest {
+
+    private static final long NEVER = TimeUnit.MINUTES.toMillis(10);
+
+    private static WriteBehindCacheStore store(CacheStore delegate, int maxPending) {
+        // 后台线程不会在测试期间触发写入
+        return new WriteBehindCacheStore(delegate, NEVER, Integer.MAX_VALUE, maxPending);
+    }
+
+    @Test
+    public void coalescesWritesToOneKey() throws Exception {
+        CountingStore delegate = new CountingStore();
+        WriteBehindCacheStore store = store(delegate, 1000);
+        store.set("k", 1);
+        store.set("k", 2);
+        store.set("k", 3);
+        assertEquals(1, store.getPendingSize());
+        assertEquals(0, delegate.writes.get());
+
+        store.flush();
+        assertEquals(1, delegate.writes.get());
+        assertEquals(Integer.valueOf(3), delegate.get("k"));
+        store.destroy();
+    }
+
+    @Test
+    public void readsPendingWritesAndDeletes() throws Exception {
+        CountingStore delegate = new CountingStore();
+        delegate.set("old", "v0");
+        WriteBehindCacheStore store = store(delegate, 1000);
+
+        store.set("new", "v1");
+        store.delete("old");
+        assertEquals("v1", store.get("new"));
+        assertNull(store.get("old"));
+        assertNull(delegate.get("new"));
+        assertEquals("v0", delegate.get("old"));
+
+        store.flush();
+        assertEquals("v1", delegate.get("new"));
+        assertNull(delegate.get("old"));
+        store.destroy();
+    }
+
+    @Test
+    public void failedBatchIsRequeued() throws Exception {
+        CountingStore delegate = new CountingStore();
+        WriteBehindCacheStore store = store(delegate, 1000);
+        store.set("a", 1);
+        store.set("b", 2);
+
+        delegate.failing = true;
+        try {
+            store.flush();
+            fail("expected CacheException");
+        } catch (CacheException e) {
+            // 写入失败时异常抛给调用方
+        }
+        assertEquals(2, store.getPendingSize());
+        assertEquals(Integer.valueOf(1), store.get("a"));
+
+        store.set("a", 3);
+        delegate.failing = false;
+        store.flush();
+        assertEquals(0, store.getPendingSize());
+        assertEquals(Integer.valueOf(3), delegate.get("a"));
+        assertEquals(Integer.valueOf(2), delegate.get("b"));
+        store.destroy();
+    }
+
+    @Test
+    public void flushesSynchronouslyAtMaxPending() throws Exception {
+        CountingStore delegate = new CountingStore();
+        WriteBehindCacheStore store = store(delegate, 3);
+        store.set("a", 1);
+        store.set("b", 2);
+        assertEquals(0, delegate.writes.get());
+
+        store.set("c", 3);
+        assertEquals(3, delegate.writes.get());
+        assertEquals(0, store.getPendingSize());
+        assertEquals(Integer.valueOf(3), delegate.get("c"));
+        store.destroy();
+    }
+
+    @Test
+    public void destroyDrainsQueue() throws Exception {
+        CountingStore delegate = new CountingStore();
+        WriteBehindCacheStore store = store(delegate, 1000);
+        for (int i = 0; i < 10; i++) {
+            store.set("k" + i, i);
+        }
+        store.delete("k0");
+
+        store.destroy();
+        assertEquals(0, store.getPendingSize());
+        assertNull(delegate.get("k0"));
+        for (int i = 1; i < 10; i++) {
+            assertEquals(Integer.valueOf(i), delegate.get("k" + i));
+        }
+    }
+
+    private static final class CountingStore extends MemoryCacheStore {
+        private final AtomicInteger writes = new AtomicInteger();
+        private volatile boolean failing;
+
+        @Override
+        public void set(String key, Object value) {
+            if (failing) {
+                throw new CacheException("backend unavailable");
+            }
+            writes.incrementAndGet();
+            super.set(key, value);
+        }
+
+        @Override
+        public void delete(String key) {
+            if (failing) {
+                throw new CacheException("backend unavailable");
+            }
+            writes.incrementAndGet();
+            super.delete(key);
+        }
+    }
+}
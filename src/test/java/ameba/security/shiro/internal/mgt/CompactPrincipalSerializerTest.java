@@ -0,0 +1,114 @@
+package ameba.security.shiro.internal.mgt;
+
+import ameba.security.shiro.util.BinaryReader;
+import ameba.security.shiro.util.BinaryWriter;
+import com.google.common.collect.Lists;
+import org.apache.shiro.io.DefaultSerializer;
+import org.apache.shiro.io.SerializationException;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.junit.Test;
+
+import java.io.Serializable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author icode
+ */
+public class CompactPrincipalSerializerTest {
+
+    @Test
+    public void roundTripsPrimitivePrincipals() {
+        CompactPrincipalSerializer serializer = new CompactPrincipalSerializer();
+        SimplePrincipalCollection principals = new SimplePrincipalCollection("alice", "realmA");
+        principals.add(42L, "realmA");
+        principals.add(7, "realmB");
+        assertEquals(principals, serializer.deserialize(serializer.serialize(principals)));
+    }
+
+    @Test
+    public void readsLegacySerializedCookie() {
+        SimplePrincipalCollection principals = new SimplePrincipalCollection("alice", "realm");
+        byte[] legacy = new DefaultSerializer<PrincipalCollection>().serialize(principals);
+        assertEquals(principals, new CompactPrincipalSerializer().deserialize(legacy));
+    }
+
+    @Test
+    public void unregisteredPrincipalTypeUsesLegacyFormat() {
+        CompactPrincipalSerializer serializer = new CompactPrincipalSerializer();
+        SimplePrincipalCollection principals = new SimplePrincipalCollection(new User(1, "alice"), "realm");
+        principals.add("alice", "realm");
+        byte[] bytes = serializer.serialize(principals);
+        assertEquals(0xAC, bytes[0] & 0xff);
+        assertEquals(0xED, bytes[1] & 0xff);
+        assertEquals(principals, serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void rejectsSerializedPrincipalTag() {
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeByte(1).writeVarint(1).writeString("realm").writeVarint(1)
+                .writeByte(127).writeBytes(new DefaultSerializer<Object>().serialize(new User(1, "alice")));
+        try {
+            new CompactPrincipalSerializer().deserialize(writer.toByteArray());
+            fail("expected SerializationException");
+        } catch (SerializationException e) {
+            // 旧版本嵌入的 Java 序列化身份不再读取
+        }
+    }
+
+    @Test
+    public void usesRegisteredCodec() {
+        CompactPrincipalSerializer serializer = new CompactPrincipalSerializer();
+        serializer.setPrincipalCodecs(Lists.<PrincipalCodec<?>>newArrayList(new UserCodec()));
+        SimplePrincipalCollection principals = new SimplePrincipalCollection(new User(1, "alice"), "realm");
+        byte[] bytes = serializer.serialize(principals);
+        assertEquals(1, bytes[0]);
+        assertEquals(principals, serializer.deserialize(bytes));
+    }
+
+    private static final class User implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final long id;
+        private final String name;
+
+        private User(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof User && ((User) o).id == id && ((User) o).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(id) * 31 + name.hashCode();
+        }
+    }
+
+    private static final class UserCodec implements PrincipalCodec<User> {
+        @Override
+        public int getTag() {
+            return 16;
+        }
+
+        @Override
+        public Class<User> getType() {
+            return User.class;
+        }
+
+        @Override
+        public void write(BinaryWriter writer, User principal) {
+            writer.writeVarlong(principal.id).writeString(principal.name);
+        }
+
+        @Override
+        public User read(BinaryReader reader) {
+            return new User(reader.readVarlong(), reader.readString());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ameba.security.shiro.internal.mgt;
+
+import ameba.security.shiro.util.BinaryReader;
+import com.google.common.collect.ImmutableMap;
+import org.apache.shiro.codec.Base64;
+import org.apache.shiro.crypto.CryptoException;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.apache.shiro.subject.SubjectContext;
+import org.junit.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author icode
+ */
+public class SignedCookieRememberMeManagerTest {
+
+    private static final String KEY1 = key(1);
+    private static final String KEY2 = key(2);
+
+    private static String key(int seed) {
+        byte[] secret = new byte[32];
+        Arrays.fill(secret, (byte) seed);
+        return Base64.encodeToString(secret);
+    }
+
+    private static TestManager manager(String activeKeyId, String... idAndKeys) {
+        TestManager manager = new TestManager();
+        ImmutableMap.Builder<String, String> keys = ImmutableMap.builder();
+        for (int i = 0; i < idAndKeys.length; i += 2) {
+            keys.put(idAndKeys[i], idAndKeys[i + 1]);
+        }
+        manager.setKeys(keys.build());
+        manager.setActiveKeyId(activeKeyId);
+        manager.setTokenTtlMillis(1000);
+        return manager;
+    }
+
+    private static SimplePrincipalCollection principals() {
+        SimplePrincipalCollection principals = new SimplePrincipalCollection("alice", "realm");
+        principals.add(42L, "realm");
+        return principals;
+    }
+
+    private static void assertRejected(TestManager manager, byte[] token) {
+        try {
+            manager.convertBytesToPrincipals(token, null);
+            fail("expected CryptoException");
+        } catch (CryptoException e) {
+            // 令牌被拒绝
+        }
+    }
+
+    @Test
+    public void roundTrip() {
+        TestManager manager = manager("k1", "k1", KEY1);
+        byte[] token = manager.convertPrincipalsToBytes(principals());
+        assertEquals(principals(), manager.convertBytesToPrincipals(token, null));
+        assertEquals(2, manager.signs);
+    }
+
+    @Test
+    public void expiredTokenIsDroppedWithoutSigning() {
+        TestManager manager = manager("k1", "k1", KEY1);
+        byte[] token = manager.convertPrincipalsToBytes(principals());
+        assertEquals(1, manager.signs);
+
+        manager.now += 1000;
+        assertNull(manager.convertBytesToPrincipals(token, null));
+        assertEquals(1, manager.signs);
+        assertTrue(manager.forgotten);
+    }
+
+    @Test
+    public void tamperedPayloadIsRejected() {
+        TestManager manager = manager("k1", "k1", KEY1);
+        byte[] token = manager.convertPrincipalsToBytes(principals());
+        token[token.length - 33] ^= 1;
+        assertRejected(manager, token);
+    }
+
+    @Test
+    public void tamperedSignatureIsRejected() {
+        TestManager manager = manager("k1", "k1", KEY1);
+        byte[] token = manager.convertPrincipalsToBytes(principals());
+        token[token.length - 1] ^= 1;
+        assertRejected(manager, token);
+    }
+
+    @Test
+    public void unknownKeyIsRejected() {
+        byte[] token = manager("k9", "k9", KEY2).convertPrincipalsToBytes(principals());
+        TestManager manager = manager("k1", "k1", KEY1);
+        assertRejected(manager, token);
+        assertEquals(0, manager.signs);
+    }
+
+    @Test
+    public void rotatedKeyStillVerifiesIssuedTokens() {
+        TestManager manager = manager("k1", "k1", KEY1);
+        byte[] old = manager.convertPrincipalsToBytes(principals());
+
+        manager.setKeys(ImmutableMap.of("k1", KEY1, "k2", KEY2));
+        manager.setActiveKeyId("k2");
+        assertEquals(principals(), manager.convertBytesToPrincipals(old, null));
+
+        byte[] token = manager.convertPrincipalsToBytes(principals());
+        BinaryReader reader = new BinaryReader(token);
+        reader.readByte();
+        assertEquals("k2", reader.readString());
+        assertEquals(principals(), manager.convertBytesToPrincipals(token, null));
+
+        // 移除旧密钥后，旧密钥签发的令牌失效
+        manager.setKeys(ImmutableMap.of("k2", KEY2));
+        assertRejected(manager, old);
+        assertEquals(principals(), manager.convertBytesToPrincipals(token, null));
+    }
+
+    @Test
+    public void truncatedTokenIsRejected() {
+        TestManager manager = manager("k1", "k1", KEY1);
+        byte[] token = manager.convertPrincipalsToBytes(principals());
+        assertRejected(manager, Arrays.copyOf(token, token.length - 1));
+        assertRejected(manager, Arrays.copyOf(token, 40));
+        assertRejected(manager, Arrays.copyOf(token, 8));
+    }
+
+    @Test
+    public void trailingBytesAreRejected() {
+        TestManager manager = manager("k1", "k1", KEY1);
+        byte[] token = manager.convertPrincipalsToBytes(principals());
+        assertRejected(manager, Arrays.copyOf(token, token.length + 1));
+    }
+
+    private static final class TestManager extends SignedCookieRememberMeManager {
+        private long now = 1000;
+        private int signs;
+        private boolean forgotten;
+
+        @Override
+        protected long now() {
+            return now;
+        }
+
+        @Override
+        protected byte[] sign(SecretKeySpec key, byte[] data, int length) {
+            signs++;
+            return super.sign(key, data, length);
+        }
+
+        @Override
+        public void forgetIdentity(SubjectContext subjectContext) {
+            forgotten = true;
+        }
+    }
+}
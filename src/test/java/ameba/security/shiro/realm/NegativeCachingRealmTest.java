@@ -0,0 +1,95 @@
+package ameba.security.shiro.realm;
+
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.UnknownAccountException;
+import org.apache.shiro.authc.UsernamePasswordToken;
+import org.apache.shiro.authz.permission.PermissionResolver;
+import org.apache.shiro.authz.permission.PermissionResolverAware;
+import org.apache.shiro.authz.permission.WildcardPermissionResolver;
+import org.apache.shiro.realm.Realm;
+import org.apache.shiro.util.Destroyable;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author icode
+ */
+public class NegativeCachingRealmTest {
+
+    @Test
+    public void cachedUnknownAccountIsRethrown() {
+        CountingRealm target = new CountingRealm();
+        NegativeCachingRealm realm = new NegativeCachingRealm(target);
+        for (int i = 0; i < 3; i++) {
+            try {
+                realm.getAuthenticationInfo(new UsernamePasswordToken("missing", "pwd"));
+                fail("expected UnknownAccountException");
+            } catch (UnknownAccountException e) {
+                assertEquals("No account for missing", e.getMessage());
+            }
+        }
+        assertEquals(1, target.lookups);
+    }
+
+    @Test
+    public void cachedNullStaysNull() {
+        CountingRealm target = new CountingRealm();
+        NegativeCachingRealm realm = new NegativeCachingRealm(target);
+        assertNull(realm.getAuthenticationInfo(new UsernamePasswordToken("nobody", "pwd")));
+        assertNull(realm.getAuthenticationInfo(new UsernamePasswordToken("nobody", "pwd")));
+        assertEquals(1, target.lookups);
+    }
+
+    @Test
+    public void forwardsLifecycleToWrappedRealm() throws Exception {
+        CountingRealm target = new CountingRealm();
+        NegativeCachingRealm realm = new NegativeCachingRealm(target);
+        PermissionResolver resolver = new WildcardPermissionResolver();
+        realm.setPermissionResolver(resolver);
+        assertSame(resolver, target.permissionResolver);
+        realm.destroy();
+        assertTrue(target.destroyed);
+    }
+
+    private static final class CountingRealm implements Realm, PermissionResolverAware, Destroyable {
+        private int lookups;
+        private PermissionResolver permissionResolver;
+        private boolean destroyed;
+
+        @Override
+        public String getName() {
+            return "counting";
+        }
+
+        @Override
+        public boolean supports(AuthenticationToken token) {
+            return true;
+        }
+
+        @Override
+        public AuthenticationInfo getAuthenticationInfo(AuthenticationToken token) throws AuthenticationException {
+            lookups++;
+            if ("nobody".equals(token.getPrincipal())) {
+                return null;
+            }
+            throw new UnknownAccountException("No account for " + token.getPrincipal());
+        }
+
+        @Override
+        public void setPermissionResolver(PermissionResolver permissionResolver) {
+            this.permissionResolver = permissionResolver;
+        }
+
+        @Override
+        public void destroy() {
+            destroyed = true;
+        }
+    }
+}
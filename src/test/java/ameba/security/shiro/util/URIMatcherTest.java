@@ -0,0 +1,138 @@
+package ameba.security.shiro.util;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author icode
+ */
+public class URIMatcherTest {
+
+    private static final int ITERATIONS = 100000;
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static boolean isAllocationMeasurable() {
+        try {
+            com.sun.management.ThreadMXBean bean =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            return bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled();
+        } catch (ClassCastException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void matchesPlainRules() {
+        assertTrue(new URIMatcher("/a/b:GET").matches("/a/b", "GET"));
+        assertFalse(new URIMatcher("/a/b:GET").matches("/a/b", "POST"));
+        assertTrue(new URIMatcher("/a/**").matches("/a", "GET"));
+        assertTrue(new URIMatcher("/a/**").matches("/a/b/c", "GET"));
+        assertTrue(new URIMatcher("/a/*").matches("/a/b", "GET"));
+        assertFalse(new URIMatcher("/a/*").matches("/a/b/c", "GET"));
+    }
+
+    @Test
+    public void stringOverloadAgreesWithUriOverload() {
+        URIMatcher[] matchers = {
+                new URIMatcher("/a/b"),
+                new URIMatcher("/a/**:GET"),
+                new URIMatcher("/a/*:POST"),
+                new URIMatcher("/users/{\\d+}")
+        };
+        for (String uri : Arrays.asList("/a/b", "/a", "/a/b/c", "/users/12", "/users/x", "/b")) {
+            URI reqUri = URI.create(uri);
+            for (String method : Arrays.asList("GET", "POST")) {
+                for (URIMatcher matcher : matchers) {
+                    assertEquals(uri + " " + method + " " + matcher.getUri(),
+                            matcher.matches(reqUri, method),
+                            matcher.matches(reqUri.getPath(), reqUri.getQuery(), method));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void plainRulesDoNotAllocate() {
+        Assume.assumeTrue(isAllocationMeasurable());
+        URIMatcher[] matchers = {
+                new URIMatcher("/api/users:GET"),
+                new URIMatcher("/api/**:GET POST"),
+                new URIMatcher("/api/users/*"),
+                new URIMatcher("/api/users/**:POST PUT")
+        };
+        String path = "/api/users/42";
+        // 预热，排除类加载和编译带来的分配
+        int matched = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            matched += matchAll(matchers, path);
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            matched += matchAll(matchers, path);
+        }
+        long allocated = allocatedBytes() - before;
+        assertTrue(matched > 0);
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    @Test
+    public void indexDoesNotAllocate() {
+        Assume.assumeTrue(isAllocationMeasurable());
+        URIMatcherIndex index = URIMatcherIndex.compile(Arrays.asList(
+                new URIMatcher("/api/users/42/profile:GET"),
+                new URIMatcher("/api/orders/*:GET"),
+                new URIMatcher("/api/admin/**:POST")));
+        String[] paths = {"/api/users/42/profile", "/api/orders/7", "/api/users/42", "/api/orders/7/items"};
+        int matched = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            matched += matchAll(index, paths);
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            matched += matchAll(index, paths);
+        }
+        long allocated = allocatedBytes() - before;
+        assertEquals(2 * ITERATIONS * 4, matched);
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static int matchAll(URIMatcher[] matchers, String path) {
+        int matched = 0;
+        for (URIMatcher matcher : matchers) {
+            if (matcher.matches(path, null, "GET")) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    private static int matchAll(URIMatcherIndex index, String[] paths) {
+        int matched = 0;
+        // 前两个命中精确和单层规则，后两个不命中，另外用 POST 覆盖按方法分派
+        if (index.matches(paths[0], null, "GET")) {
+            matched++;
+        }
+        if (index.matches(paths[1], null, "GET")) {
+            matched++;
+        }
+        if (!index.matches(paths[2], null, "GET")) {
+            matched++;
+        }
+        if (!index.matches(paths[3], null, "POST")) {
+            matched++;
+        }
+        return matched;
+    }
+}
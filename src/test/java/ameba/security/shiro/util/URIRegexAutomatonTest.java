@@ -0,0 +1,39 @@
+package ameba.security.shiro.util;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author icode
+ */
+public class URIRegexAutomatonTest {
+
+    @Test
+    public void agreesWithPattern() {
+        List<URIMatcher> matchers = Lists.newArrayList(
+                new URIMatcher("/users/{\\d+}:GET"),
+                new URIMatcher("/files/{[a-z]+(?:/[a-z]+)*}", "*"),
+                new URIMatcher("/v{[12]}/items/{\\w+?}")
+        );
+        URIRegexAutomaton automaton = URIRegexAutomaton.compile(matchers);
+        for (String path : Arrays.asList("/users/1", "/users/", "/files/a/b/c",
+                "/files/a//b", "/v1/items/x_1", "/v3/items/x", "/other")) {
+            URIMatcher expected = null;
+            for (URIMatcher matcher : matchers) {
+                if (matcher.matches(path, "GET")) {
+                    expected = matcher;
+                    break;
+                }
+            }
+            // 重复匹配，确认复用的状态不会影响结果
+            for (int i = 0; i < 3; i++) {
+                assertEquals(path, expected, automaton.find(path, "GET"));
+            }
+        }
+    }
+}